@@ -0,0 +1,76 @@
+package com.novaapps.floatingactionmenu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of computing one animation frame with the MenuAnimationEngine: the translation of every item
+ * between its closed position (on the menu button) and its laid out position, the icon rotation and
+ * the scrim alpha, eased like the open animation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnimationFrameBenchmark {
+
+    /**
+     * Tension of android.view.animation.OvershootInterpolator's default constructor.
+     */
+    private static final float TENSION = 2.0f;
+
+    /**
+     * Number of frames of a 300ms animation at 60fps.
+     */
+    private static final int FRAMES = 18;
+
+    @Param({"2", "5", "10", "50", "200"})
+    public int itemCount;
+
+    @Param({"true", "false"})
+    public boolean circle;
+
+    private MenuAnimationEngine mEngine;
+    private int mFrame;
+
+    @Setup
+    public void setUp() {
+        MenuLayoutEngine layoutEngine = new MenuLayoutEngine();
+        layoutEngine.setIsCircle(circle);
+        layoutEngine.setMultipleOfFB(3.2f);
+        MenuFixtures.fillSizes(layoutEngine, itemCount);
+        layoutEngine.layout(MenuFixtures.RIGHT, MenuFixtures.BOTTOM,
+                MenuFixtures.BUTTON_SIZE, MenuFixtures.BUTTON_SIZE, itemCount);
+
+        mEngine = new MenuAnimationEngine();
+        mEngine.prepare(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            mEngine.setItem(i, layoutEngine.closedTranslationX(i), layoutEngine.closedTranslationY(i), 0, 0);
+        }
+        mEngine.setRotation(0f, 135f);
+        mEngine.setAlpha(0f, 1f);
+    }
+
+    @Benchmark
+    public MenuAnimationEngine frame() {
+        float t = (float) mFrame / FRAMES - 1.0f;
+        mFrame = mFrame == FRAMES ? 0 : mFrame + 1;
+        // Same curve as OvershootInterpolator.getInterpolation().
+        float fraction = t * t * ((TENSION + 1) * t + TENSION) + 1.0f;
+        mEngine.apply(fraction);
+        return mEngine;
+    }
+}
@@ -0,0 +1,56 @@
+package com.novaapps.floatingactionmenu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping a touch point to a menu item on an open menu, cycling through the centers of all items.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HitTestBenchmark {
+
+    @Param({"2", "5", "10", "50", "200"})
+    public int itemCount;
+
+    @Param({"true", "false"})
+    public boolean circle;
+
+    private MenuLayoutEngine mEngine;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mEngine = new MenuLayoutEngine();
+        mEngine.setIsCircle(circle);
+        mEngine.setMultipleOfFB(3.2f);
+        MenuFixtures.fillSizes(mEngine, itemCount);
+        mEngine.layout(MenuFixtures.RIGHT, MenuFixtures.BOTTOM,
+                MenuFixtures.BUTTON_SIZE, MenuFixtures.BUTTON_SIZE, itemCount);
+    }
+
+    @Benchmark
+    public int hitTest() {
+        int[] positions = mEngine.getPositions();
+        int p = MenuLayoutEngine.itemOffset(mNext);
+        mNext = mNext == itemCount - 1 ? 0 : mNext + 1;
+        float x = (positions[p + MenuLayoutEngine.LEFT] + positions[p + MenuLayoutEngine.RIGHT]) / 2f;
+        float y = (positions[p + MenuLayoutEngine.TOP] + positions[p + MenuLayoutEngine.BOTTOM]) / 2f;
+        return mEngine.hitTest(x, y);
+    }
+}
@@ -0,0 +1,51 @@
+package com.novaapps.floatingactionmenu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one layout pass of the circle and line patterns, as done by FloatingActionMenu.onLayout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+
+    @Param({"2", "5", "10", "50", "200"})
+    public int itemCount;
+
+    @Param({"true", "false"})
+    public boolean circle;
+
+    private MenuLayoutEngine mEngine;
+
+    @Setup
+    public void setUp() {
+        mEngine = new MenuLayoutEngine();
+        mEngine.setIsCircle(circle);
+        mEngine.setMultipleOfFB(3.2f);
+        mEngine.setItemGap(16);
+        MenuFixtures.fillSizes(mEngine, itemCount);
+    }
+
+    @Benchmark
+    public int[] layout() {
+        mEngine.layout(MenuFixtures.RIGHT, MenuFixtures.BOTTOM,
+                MenuFixtures.BUTTON_SIZE, MenuFixtures.BUTTON_SIZE, itemCount);
+        return mEngine.getPositions();
+    }
+}
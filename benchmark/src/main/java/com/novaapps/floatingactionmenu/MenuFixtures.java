@@ -0,0 +1,37 @@
+package com.novaapps.floatingactionmenu;
+
+/**
+ * Representative sizes (in px on an xxhdpi device) shared by the benchmarks.
+ */
+final class MenuFixtures {
+
+    static final int RIGHT = 1080;
+    static final int BOTTOM = 1920;
+
+    /**
+     * A normal FloatingActionButton.
+     */
+    static final int BUTTON_SIZE = 168;
+
+    /**
+     * A mini FloatingActionButton.
+     */
+    static final int ITEM_SIZE = 120;
+
+    private MenuFixtures() {
+    }
+
+    /**
+     * Fills the engine's size buffer with mini items and labels of varying width.
+     */
+    static void fillSizes(MenuLayoutEngine engine, int count) {
+        int[] sizes = engine.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int s = i * MenuLayoutEngine.SIZE_STRIDE;
+            sizes[s + MenuLayoutEngine.ITEM_WIDTH] = ITEM_SIZE;
+            sizes[s + MenuLayoutEngine.ITEM_HEIGHT] = ITEM_SIZE;
+            sizes[s + MenuLayoutEngine.LABEL_WIDTH] = 200 + (i % 7) * 40;
+            sizes[s + MenuLayoutEngine.LABEL_HEIGHT] = 72;
+        }
+    }
+}
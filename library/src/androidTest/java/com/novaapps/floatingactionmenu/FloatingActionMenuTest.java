@@ -0,0 +1,170 @@
+package com.novaapps.floatingactionmenu;
+
+import android.content.Context;
+import android.support.design.widget.FloatingActionButton;
+import android.test.AndroidTestCase;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures and lays out a detached FloatingActionMenu, the way a parent does.
+ */
+public class FloatingActionMenuTest extends AndroidTestCase {
+
+    private static final int SIZE = 1000;
+
+    private Context mContext;
+    private LayoutCountingMenu mMenu;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The design widgets need an AppCompat theme.
+        mContext = new ContextThemeWrapper(getContext(), android.support.v7.appcompat.R.style.Theme_AppCompat);
+        mMenu = new LayoutCountingMenu(mContext);
+        // The first child is the menu button, the following ones are the items.
+        mMenu.addView(new FloatingActionButton(mContext));
+    }
+
+    private FloatingActionButton[] addItems(int count) {
+        FloatingActionButton[] items = new FloatingActionButton[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = new FloatingActionButton(mContext);
+            items[i].setContentDescription("Item " + i);
+            mMenu.addView(items[i]);
+        }
+        return items;
+    }
+
+    private void measureAndLayout() {
+        int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        mMenu.measure(spec, spec);
+        mMenu.layout(0, 0, mMenu.getMeasuredWidth(), mMenu.getMeasuredHeight());
+    }
+
+    /**
+     * Runs a layout pass if one was requested, as the next frame would.
+     */
+    private void layoutIfRequested() {
+        if (mMenu.isLayoutRequested()) {
+            measureAndLayout();
+        }
+    }
+
+    private FloatingActionButton newItem() {
+        return new FloatingActionButton(mContext);
+    }
+
+    /**
+     * Applies several item changes, with a frame after each of them.
+     */
+    private void changeItems() {
+        addItems(2);
+        layoutIfRequested();
+        mMenu.addView(newItem());
+        layoutIfRequested();
+        mMenu.setMenuItems(Arrays.asList(newItem(), newItem(), newItem()));
+        layoutIfRequested();
+    }
+
+    public void testMeasuresClosedMenuWithItems() {
+        addItems(3);
+
+        int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST);
+        mMenu.measure(spec, spec);
+
+        assertFalse(mMenu.isOpened());
+        assertTrue(mMenu.getMeasuredWidth() > 0);
+        assertTrue(mMenu.getMeasuredHeight() > 0);
+    }
+
+    public void testResetBeforeFirstLayout() {
+        FloatingActionButton[] items = addItems(3);
+
+        // A RecyclerView row is bound before it is laid out.
+        mMenu.reset();
+        assertTrue(mMenu.isLayoutRequested());
+
+        measureAndLayout();
+        for (FloatingActionButton item : items) {
+            assertEquals(View.GONE, item.getVisibility());
+        }
+    }
+
+    public void testAdapterBindsChangedPositionsOnly() {
+        final List<String> data = new ArrayList<>(Arrays.asList("A", "B", "C", "D", "E"));
+        final List<Integer> bound = new ArrayList<>();
+        MenuAdapter adapter = new MenuAdapter() {
+            @Override
+            public int getItemCount() {
+                return data.size();
+            }
+
+            @Override
+            public void onBindItem(FloatingActionButton item, int position) {
+                item.setContentDescription(data.get(position));
+                bound.add(position);
+            }
+        };
+        mMenu.setAdapter(adapter);
+        measureAndLayout();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), bound);
+        bound.clear();
+
+        data.add(1, "X");
+        adapter.notifyItemInserted(1);
+        data.add(0, data.remove(4));
+        adapter.notifyItemMoved(4, 0);
+        data.set(5, "E2");
+        adapter.notifyItemChanged(5);
+        measureAndLayout();
+
+        // The inserted item, moved by the move, and the changed one.
+        assertEquals(Arrays.asList(2, 5), bound);
+    }
+
+    public void testBatchedUpdatesLayOutOnce() {
+        addItems(2);
+        measureAndLayout();
+        mMenu.mLayoutPasses = 0;
+
+        mMenu.beginUpdate();
+        changeItems();
+        assertEquals(0, mMenu.mLayoutPasses);
+        mMenu.endUpdate();
+        layoutIfRequested();
+
+        assertEquals(1, mMenu.mLayoutPasses);
+    }
+
+    public void testUnbatchedUpdatesLayOutEachTime() {
+        addItems(2);
+        measureAndLayout();
+        mMenu.mLayoutPasses = 0;
+
+        changeItems();
+
+        assertEquals(3, mMenu.mLayoutPasses);
+    }
+
+    /**
+     * Counts the layout passes of the menu.
+     */
+    private static class LayoutCountingMenu extends FloatingActionMenu {
+        int mLayoutPasses;
+
+        LayoutCountingMenu(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            mLayoutPasses++;
+            super.onLayout(changed, l, t, r, b);
+        }
+    }
+}
@@ -1,30 +1,40 @@
 package com.novaapps.floatingactionmenu;
 
 import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.TimeInterpolator;
 import android.animation.ValueAnimator;
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcelable;
+import android.support.annotation.DrawableRes;
 import android.support.annotation.NonNull;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.WindowManager;
+import android.view.animation.AnimationUtils;
 import android.view.animation.AnticipateInterpolator;
 import android.view.animation.OvershootInterpolator;
 import android.widget.ImageView;
-import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Component for a FloatingActionMenu.
@@ -35,6 +45,29 @@ public class FloatingActionMenu extends ViewGroup {
 
     //-- Properties --//
 
+    /**
+     * Compile-time switch of the debug logging, the log calls and their messages are compiled out when false.
+     */
+    private static final boolean DEBUG = false;
+
+    /**
+     * States of the menu. Opening and closing are the animated transitions between closed and open.
+     */
+    private static final int STATE_CLOSED = 0;
+    private static final int STATE_OPENING = 1;
+    private static final int STATE_OPEN = 2;
+    private static final int STATE_CLOSING = 3;
+
+    /**
+     * The menu follows setProgress() (e.g. a drag on the menu button) until it is settled.
+     */
+    private static final int STATE_SCRUBBING = 4;
+
+    /**
+     * Velocity, in progress per second, above which a released drag settles in its direction.
+     */
+    private static final float SETTLE_VELOCITY = 1f;
+
     /**
      * Defines the rate of change for the open animation.
      */
@@ -56,24 +89,52 @@ public class FloatingActionMenu extends ViewGroup {
     private ArrayList<FloatingActionButton> mMenuItems;
 
     /**
-     * The list of labels to appear next to the menu items.
+     * The list of labels to appear next to the menu items, empty until the labels are created.
+     */
+    private ArrayList<MenuLabel> mMenuItemLabels;
+
+    /**
+     * Computes the item translations, icon rotation and scrim alpha of every animation frame.
+     */
+    private final MenuAnimationEngine mAnimationEngine = new MenuAnimationEngine();
+
+    /**
+     * The single animation clock that drives the open/close animations of the whole menu.
+     */
+    private ValueAnimator mAnimator;
+
+    /**
+     * A flag representing the direction of the current animation, true when the menu is opening.
+     */
+    private boolean mAnimatingOpen;
+
+    /**
+     * A flag set when the current animation was cancelled, so its end does not apply the final visibility.
      */
-    private ArrayList<TextView> mMenuItemLabels;
+    private boolean mAnimationCancelled;
 
     /**
-     * Animators to animate the appearance/disappearance of the menu items.
+     * A flag representing whether or not the moving views are rendered into hardware layers while the
+     * menu animates (default true).
      */
-    private ArrayList<ItemAnimator> mMenuItemAnimators;
+    private boolean mAnimationLayers = true;
 
     /**
-     * The set of animations to occur when the menu opens.
+     * A flag representing whether or not the moving views currently are in hardware layers.
      */
-    private AnimatorSet mOpenAnimatorSet = new AnimatorSet();
+    private boolean mLayersPromoted;
 
     /**
-     * The set of animations to occur when the menu closes.
+     * The dim layer drawn behind the items while the menu is open. Created lazily since the background
+     * is assigned from the View constructor, before the fields of this class are initialized.
      */
-    private AnimatorSet mCloseAnimatorSet = new AnimatorSet();
+    private MenuScrim mScrim;
+
+    /**
+     * The overlay shared with the other menus of the window, which keeps a single menu open and draws the
+     * scrim over the rest of the window when the menu is smaller than it. Null while detached.
+     */
+    private MenuScrimLayer mScrimLayer;
 
     /**
      * The image that will appear inside the main menu item.
@@ -86,9 +147,67 @@ public class FloatingActionMenu extends ViewGroup {
     private boolean mOpen;
 
     /**
-     * A flag representing the current animation stte of the menu.
+     * The current state of the menu, one of the STATE_ constants.
+     */
+    private int mState = STATE_CLOSED;
+
+    /**
+     * A flag representing whether or not the menu animates with a spring instead of a fixed duration tween.
+     */
+    private boolean mSpringAnimation;
+
+    /**
+     * The spring driving the open progress of the menu in spring animation mode.
+     */
+    private final MenuSpring mSpring = new MenuSpring();
+
+    /**
+     * A flag representing whether or not the spring is running, i.e. mSpringFrame is scheduled.
+     */
+    private boolean mSpringRunning;
+
+    /**
+     * The animation time of the last spring frame, in milliseconds.
+     */
+    private long mLastSpringFrameTime;
+
+    /**
+     * The open progress set by setProgress(), from 0 (closed) to 1 (open).
+     */
+    private float mProgress;
+
+    /**
+     * A flag representing whether or not the next transition starts from the scrubbed progress rather
+     * than from the open/closed state.
+     */
+    private boolean mSettlingFromProgress;
+
+    /**
+     * Scrubs the menu open and closed when the menu button is dragged, if enabled.
      */
-    private boolean animating;
+    private DragHandler mDragHandler;
+
+    /**
+     * Steps the spring and applies it, once per display frame while it runs.
+     */
+    private final Runnable mSpringFrame = new Runnable() {
+        @Override
+        public void run() {
+            long now = AnimationUtils.currentAnimationTimeMillis();
+            // Do not let a long stall (e.g. a GC) fling the spring.
+            float seconds = Math.min(now - mLastSpringFrameTime, 64) / 1000f;
+            mLastSpringFrameTime = now;
+            boolean atRest = mSpring.step(seconds);
+            mAnimationEngine.apply(mSpring.getPosition());
+            applyAnimationFrame();
+            if (atRest) {
+                mSpringRunning = false;
+                onAnimationFinished(mAnimatingOpen);
+            } else {
+                ViewCompat.postOnAnimation(FloatingActionMenu.this, this);
+            }
+        }
+    };
 
     /**
      * A flag representing whether or not the menu should close if the user touches outside of the menu items.
@@ -101,24 +220,97 @@ public class FloatingActionMenu extends ViewGroup {
     private long duration = 300;
 
     /**
-     * A flag representing whether or not the menu appearance is a circle (true) or linear menu (false).
+     * Computes the positions of the menu button, items and labels.
+     */
+    private final MenuLayoutEngine mLayoutEngine = new MenuLayoutEngine();
+
+    /**
+     * Draws the items and labels when they are not children of the menu, null unless that mode is enabled.
+     */
+    private MenuItemRenderer mItemRenderer;
+
+    /**
+     * The index of the drawn item being pressed, or -1.
+     */
+    private int mPressedItem = -1;
+
+    /**
+     * The adapter providing the menu items, if any.
+     */
+    private MenuAdapter mAdapter;
+
+    /**
+     * Adapter changes that are applied together in the next measure pass.
+     */
+    private final MenuUpdateQueue mPendingUpdates = new MenuUpdateQueue();
+
+    /**
+     * Adapter items removed from the menu, kept to be bound again instead of creating new ones.
+     */
+    private final ArrayList<FloatingActionButton> mRecycledItems = new ArrayList<>(5);
+
+    /**
+     * Whether the item at each position needs to be bound once a batch of adapter changes has been applied.
+     * Kept in step with mMenuItems while the batch is applied, so items are bound by index.
+     */
+    private boolean[] mNeedsBind = new boolean[5];
+
+    /**
+     * A flag representing whether or not the items changed since the last layout, so they are laid out
+     * even if the bounds of the menu did not change.
+     */
+    private boolean mItemsChanged;
+
+    /**
+     * The corner the menu button was last laid out at, a layout pass that only moves the menu keeps it.
      */
-    private boolean isCircle = false;
+    private int mLayoutRight = -1;
+    private int mLayoutBottom = -1;
 
     /**
-     * The radius of the circular menu (if application).
+     * The widest the text of a label may be, in pixels, it is ellipsized beyond.
      */
-    private int mRadius = 256;
+    private int mLabelMaxWidth = Integer.MAX_VALUE;
 
     /**
-     * If the radius of the circle is a multiple of the FB width, this is what that ratio is.
+     * A flag representing whether or not the labels exist. They are created, and measured, when the menu
+     * first opens in the line pattern (or from an idle callback, see {@link #prewarm()}), since a menu that
+     * is never opened never shows them. Until then mMenuItemLabels is empty.
      */
-    private float multipleOfFB = 0;
+    private boolean mLabelsCreated;
 
     /**
-     * The gap between menu items.
+     * The nesting depth of beginUpdate()/endUpdate() calls, layout requests are deferred while positive.
      */
-    private int mItemGap = 0;
+    private int mUpdateDepth;
+
+    /**
+     * A flag representing whether or not a layout was requested while updates were deferred.
+     */
+    private boolean mLayoutRequestedDuringUpdate;
+
+    /**
+     * Reports frame timing and layout metrics, null unless an OnMenuMetricsListener is installed.
+     */
+    private MenuMetrics mMetrics;
+
+    /**
+     * The area of the menu changed by the last animation frame, the union of the previous and next bounds
+     * of everything that moved. Reused by every frame.
+     */
+    private final Rect mFrameDamage = new Rect();
+
+    /**
+     * A flag representing whether or not the labels were hidden since the last frame, so the next frame
+     * also covers them.
+     */
+    private boolean mLabelsDamaged;
+
+    /**
+     * Receives the area the menu invalidates for drawn items on an animation frame, for debugging, null by
+     * default.
+     */
+    private OnMenuInvalidateListener mOnMenuInvalidateListener;
 
     /**
      * A click listener for the main menu item.
@@ -131,23 +323,21 @@ public class FloatingActionMenu extends ViewGroup {
     private OnMenuToggleListener onMenuToggleListener;
 
     /**
-     * A GestureDetector that looks for gestures outside the FAM and closes it if necessary.
+     * A listener for when a menu item is pressed, before it is clicked.
      */
-    GestureDetector mGestureDetector = new GestureDetector(getContext(),
-            new GestureDetector.SimpleOnGestureListener() {
+    private OnMenuItemPressListener onMenuItemPressListener;
 
-                @Override
-                public boolean onDown(MotionEvent e) {
-                    return mIsSetClosedOnTouchOutside && isOpened();
-                }
+    /**
+     * The index of the item reported pressed to the OnMenuItemPressListener and not yet clicked or
+     * cancelled, or -1.
+     */
+    private int mIntentItem = -1;
 
-                @Override
-                public boolean onSingleTapUp(MotionEvent e) {
-                    close();
-                    return true;
-                }
-            }
-    );
+    /**
+     * A GestureDetector that looks for gestures outside the FAM and closes it if necessary. Created on the
+     * first touch outside the menu, see {@link #getGestureDetector()}.
+     */
+    private GestureDetector mGestureDetector;
 
     /**
      * An OnItemClickListener that handles clicks on a menu item or one of its labels.
@@ -155,25 +345,19 @@ public class FloatingActionMenu extends ViewGroup {
     private OnClickListener mOnItemClickListener = new OnClickListener() {
         @Override
         public void onClick(View v) {
-            // If we click a menu item, call our MenuItemClickListener.
-            // Else - we are clicking a label, call our MenuItemClickListener.
-            // This is split into an if/else since we access different arrays for each.
-            if (v instanceof FloatingActionButton) {
-                int i = mMenuItems.indexOf(v);
-                if (onMenuItemClickListener != null) {
-                    onMenuItemClickListener
-                            .onMenuItemClick(FloatingActionMenu.this, i, (FloatingActionButton) v);
-                }
-            } else if (v instanceof TextView) {
-                int i = mMenuItemLabels.indexOf(v);
-                if (onMenuItemClickListener != null) {
-                    onMenuItemClickListener.onMenuItemClick(FloatingActionMenu.this, i, mMenuItems.get(i));
-                }
+            // Menu items and their labels are tagged with their index when laid out.
+            Object index = v.getTag(R.id.fam_item_index);
+            if (index instanceof Integer) {
+                performItemClick((Integer) index);
             }
-            close();
         }
     };
 
+    /**
+     * Reports presses on a menu item or one of its labels to the OnMenuItemPressListener.
+     */
+    private final ItemPressHandler mItemPressHandler = new ItemPressHandler();
+
     //-- Constructors --//
 
     public FloatingActionMenu(Context context) {
@@ -189,9 +373,10 @@ public class FloatingActionMenu extends ViewGroup {
 
         // Default all lists to 5 items.
         mMenuItems = new ArrayList<>(5);
-        mMenuItemAnimators = new ArrayList<>(5);
         mMenuItemLabels = new ArrayList<>(5);
         mIcon = new ImageView(context);
+        // Items overshoot their open positions, past the exact bounds of a menu that wraps its content.
+        setClipChildren(false);
     }
 
     //-- Overriden methods --//
@@ -218,14 +403,26 @@ public class FloatingActionMenu extends ViewGroup {
             mIcon.setImageDrawable(mMenuButton.getDrawable());
             addView(mIcon);
             mMenuButton.setImageDrawable(mMenuButton.getDrawable());
-            createDefaultIconAnimation();
             mMenuButton.setOnClickListener(new OnClickListener() {
                 @Override
                 public void onClick(View v) {
                     toggle();
                 }
             });
+            mMenuButton.setOnTouchListener(mDragHandler);
+        }
+    }
+
+    /**
+     * Defers the layout request until the end of the current batch of updates, if any.
+     */
+    @Override
+    public void requestLayout() {
+        if (mUpdateDepth > 0) {
+            mLayoutRequestedDuringUpdate = true;
+            return;
         }
+        super.requestLayout();
     }
 
     /**
@@ -233,46 +430,90 @@ public class FloatingActionMenu extends ViewGroup {
      */
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final boolean trace = MenuTrace.COMPILED && MenuTrace.isEnabled();
+        if (trace) {
+            MenuTrace.begin(MenuTrace.MEASURE);
+        }
+        final long start = mMetrics != null ? System.nanoTime() : 0;
+        if (mPendingUpdates.size() > 0) {
+            applyAdapterUpdates();
+        }
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         int width;
         int heightSize = MeasureSpec.getSize(heightMeasureSpec);
         int heightMode = MeasureSpec.getMode(heightMeasureSpec);
         int height;
-        final int count = getChildCount();
-        int maxChildWidth = 0;
-        for (int i = 0; i < count; i++) {
+        final boolean measureLabels = needsLabels();
+        boolean childrenChanged = false;
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
             View child = getChildAt(i);
+            if (!measureLabels && child instanceof MenuLabel) {
+                continue;
+            }
+            final int oldWidth = child.getMeasuredWidth();
+            final int oldHeight = child.getMeasuredHeight();
             measureChild(child, widthMeasureSpec, heightMeasureSpec);
+            childrenChanged |= needsRelayout(child, oldWidth, oldHeight);
         }
-        for (int i = 0; i < mMenuItems.size(); i++) {
-            FloatingActionButton fab = mMenuItems.get(i);
-            TextView label = mMenuItemLabels.get(i);
-            maxChildWidth = Math.max(maxChildWidth,
-                    label.getMeasuredWidth() + fab.getMeasuredWidth());
-
+        if (mItemRenderer != null) {
+            // Drawn items and labels are not children, measure them here.
+            final int unspecified = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            for (int i = 0; i < mMenuItems.size(); i++) {
+                FloatingActionButton item = mMenuItems.get(i);
+                final int oldWidth = item.getMeasuredWidth();
+                final int oldHeight = item.getMeasuredHeight();
+                item.measure(unspecified, unspecified);
+                childrenChanged |= needsRelayout(item, oldWidth, oldHeight);
+            }
+            for (int i = 0; measureLabels && i < mMenuItemLabels.size(); i++) {
+                MenuLabel label = mMenuItemLabels.get(i);
+                final int oldWidth = label.getMeasuredWidth();
+                final int oldHeight = label.getMeasuredHeight();
+                measureChild(label, widthMeasureSpec, heightMeasureSpec);
+                childrenChanged |= needsRelayout(label, oldWidth, oldHeight);
+            }
+        }
+        if (childrenChanged) {
+            // Sizes changed, the children have to be laid out again even if the menu keeps its bounds.
+            mItemsChanged = true;
+        }
+        if (mItemsChanged) {
+            final int count = fillItemSizes();
+            // The exact bounds of the open menu, also needed for the overhang when the size is given.
+            mLayoutEngine.measure(mMenuButton.getMeasuredWidth(), mMenuButton.getMeasuredHeight(), count);
         }
-
-        maxChildWidth = Math.max(mMenuButton.getMeasuredWidth(), maxChildWidth);
 
         if (widthMode == MeasureSpec.EXACTLY) {
             width = widthSize;
         } else {
-            width = maxChildWidth + 30;
+            width = mLayoutEngine.getMeasuredWidth() + getPaddingLeft() + getPaddingRight();
         }
         if (heightMode == MeasureSpec.EXACTLY) {
             height = heightSize;
         } else {
-            int heightSum = 0;
-            for (int i = 0; i < count; i++) {
-                View child = getChildAt(i);
-                heightSum += child.getMeasuredHeight();
-            }
-            height = heightSum + 20;
+            height = mLayoutEngine.getMeasuredHeight() + getPaddingTop() + getPaddingBottom();
         }
 
         setMeasuredDimension(resolveSize(width, widthMeasureSpec),
                 resolveSize(height, heightMeasureSpec));
+        if (mMetrics != null) {
+            mMetrics.onMeasurePass(System.nanoTime() - start);
+        }
+        if (trace) {
+            MenuTrace.end();
+        }
+    }
+
+    /**
+     * Whether a view just measured has to be laid out again: its size changed, or it requested a layout,
+     * which is how content changes such as a new label text mark it dirty. View.measure() itself skips
+     * views whose specs did not change since, so measuring every pass stays cheap.
+     */
+    private static boolean needsRelayout(View view, int oldWidth, int oldHeight) {
+        return view.isLayoutRequested() || view.getMeasuredWidth() != oldWidth
+                || view.getMeasuredHeight() != oldHeight;
     }
 
     /**
@@ -280,8 +521,11 @@ public class FloatingActionMenu extends ViewGroup {
      */
     @Override
     public boolean onTouchEvent(@NonNull MotionEvent event) {
+        if (mItemRenderer != null && onDrawnItemTouchEvent(event)) {
+            return true;
+        }
         if (mIsSetClosedOnTouchOutside) {
-            return mGestureDetector.onTouchEvent(event);
+            return getGestureDetector().onTouchEvent(event);
         } else {
             return super.onTouchEvent(event);
         }
@@ -289,90 +533,97 @@ public class FloatingActionMenu extends ViewGroup {
 
     /**
      * Sets the layout of the ViewGroup dependent on the number of menu items as well as menu direction.
+     * The geometry itself is computed by the {@link MenuLayoutEngine}, this only applies its output.
      */
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        System.out.println("onLayout:" + changed);
-        if (changed) {
-            int right = r - getPaddingRight();
-            int bottom = b - getPaddingBottom();
-            int top = bottom - mMenuButton.getMeasuredHeight();
-            mMenuButton.layout(right - mMenuButton.getMeasuredWidth(), top, right, bottom);
-            int dw = (mMenuButton.getMeasuredWidth() - mIcon.getMeasuredWidth()) / 2;
-            int dh = (mMenuButton.getMeasuredHeight() - mIcon.getMeasuredHeight()) / 2;
-            mIcon.layout(right - mIcon.getMeasuredWidth() - dw,
-                    bottom - mIcon.getMeasuredHeight() - dh, right - dw, bottom - dh);
-
-            if (isCircle) {
-                if (mMenuItems.size() < 2) {
-                    Log.e("onLayout", "Floating Action Buttons must more then one!");
-                    return;
-                }
-                double angle = Math.PI/2d/(mMenuItems.size() - 1);
-                for (int i = 0; i < mMenuItems.size(); i++) {
-                    FloatingActionButton itemFB = mMenuItems.get(i);
-                    int fbWidth = itemFB.getMeasuredWidth();
-                    int fbHeight = itemFB.getMeasuredHeight();
-                    if (0 != multipleOfFB) {
-                        mRadius = (int) (fbWidth * multipleOfFB);
-                    }
-                    int itemDw = (mMenuButton.getMeasuredWidth() - fbWidth) / 2;
-                    int itemDh = (mMenuButton.getMeasuredHeight() - fbHeight) / 2;
-                    int itemX = (int) (mRadius*Math.cos(i*angle));
-                    int itemY = (int) (mRadius*Math.sin(i*angle));
-                    itemFB.layout(right - itemX - fbWidth - itemDw, bottom - itemY - fbHeight - itemDh,
-                            right - itemX - itemDw, bottom - itemY - itemDh);
-
-                    if (!animating) {
-                        if (!mOpen) {
-                            itemFB.setTranslationY(mMenuButton.getTop() - itemFB.getTop());
-                            itemFB.setTranslationX(mMenuButton.getLeft() - itemFB.getLeft());
-                            itemFB.setVisibility(GONE);
-                        } else {
-                            itemFB.setTranslationY(0);
-                            itemFB.setTranslationX(0);
-                            itemFB.setVisibility(VISIBLE);
-                        }
-                    }
+        final boolean trace = MenuTrace.COMPILED && MenuTrace.isEnabled();
+        if (trace) {
+            MenuTrace.begin(MenuTrace.LAYOUT);
+        }
+        final long start = mMetrics != null ? System.nanoTime() : 0;
+        // Children are laid out relative to this view, leaving room for items right of or below the button.
+        final int right = r - l - getPaddingRight() - mLayoutEngine.getOverhangRight();
+        final int bottom = b - t - getPaddingBottom() - mLayoutEngine.getOverhangBottom();
+        // Moving the menu does not move its children, only new items, sizes, geometry or padding do.
+        if (mItemsChanged || right != mLayoutRight || bottom != mLayoutBottom) {
+            mItemsChanged = false;
+            mLayoutRight = right;
+            mLayoutBottom = bottom;
+            layoutItems(right, bottom);
+            if (!isAnimating()) {
+                applySettledState();
+            }
+        }
+        if (mMetrics != null) {
+            mMetrics.onLayoutPass(System.nanoTime() - start);
+        }
+        if (trace) {
+            MenuTrace.end();
+        }
+    }
+
+    /**
+     * Computes the geometry of the menu and lays out the button, the icon, the items and their labels.
+     *
+     * @param right The right edge of the menu button, in the coordinates of this view.
+     * @param bottom The bottom edge of the menu button, in the coordinates of this view.
+     */
+    private void layoutItems(int right, int bottom) {
+        final int count = fillItemSizes();
+        mLayoutEngine.layout(right, bottom,
+                mMenuButton.getMeasuredWidth(), mMenuButton.getMeasuredHeight(), count);
+        final int[] positions = mLayoutEngine.getPositions();
+
+        layoutChild(mMenuButton, positions, MenuLayoutEngine.BUTTON);
+        int dw = (mMenuButton.getMeasuredWidth() - mIcon.getMeasuredWidth()) / 2;
+        int dh = (mMenuButton.getMeasuredHeight() - mIcon.getMeasuredHeight()) / 2;
+        mIcon.layout(right - mIcon.getMeasuredWidth() - dw,
+                bottom - mIcon.getMeasuredHeight() - dh, right - dw, bottom - dh);
+
+        // Drawn labels are laid out too, they are not drawn as views but this clears their layout request.
+        final boolean layoutLabels = needsLabels();
+        for (int i = 0; i < count; i++) {
+            int p = MenuLayoutEngine.itemOffset(i);
+            FloatingActionButton item = mMenuItems.get(i);
+            layoutChild(item, positions, p);
+            item.setTag(R.id.fam_item_index, i);
+            if (mLabelsCreated) {
+                MenuLabel label = mMenuItemLabels.get(i);
+                if (layoutLabels) {
+                    layoutChild(label, positions, p + MenuLayoutEngine.LABEL);
                 }
+                label.setTag(R.id.fam_item_index, i);
+            }
+        }
+    }
+
+    /**
+     * Applies the open or closed state to the items at rest: their translation onto the menu button when
+     * closed, the visibility of the items and labels, and the scrim. Only needed when the geometry changed
+     * or the menu settled, not on every layout pass.
+     */
+    private void applySettledState() {
+        final boolean labels = needsLabels();
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            FloatingActionButton item = mMenuItems.get(i);
+            if (!mOpen) {
+                item.setTranslationX(mLayoutEngine.closedTranslationX(i));
+                item.setTranslationY(mLayoutEngine.closedTranslationY(i));
+                item.setVisibility(GONE);
             } else {
-                for (int i = 0; i < mMenuItems.size(); i++) {
-                    FloatingActionButton item = mMenuItems.get(i);
-                    TextView label = mMenuItemLabels.get(i);
-
-                    label.setBackgroundResource(R.drawable.rounded_corners);
-                    bottom = top -= mItemGap;
-
-                    top -= item.getMeasuredHeight();
-                    int width = item.getMeasuredWidth();
-                    int d = (mMenuButton.getMeasuredWidth() - width) / 2;
-                    item.layout(right - width - d, top, right - d, bottom);
-                    d = (item.getMeasuredHeight() - label.getMeasuredHeight()) / 2;
-
-                    label.layout(item.getLeft() - label.getMeasuredWidth() - 50,
-                            item.getTop() + d, item.getLeft(),
-                            item.getTop() + d + label.getMeasuredHeight());
-                    if (!animating) {
-                        if (!mOpen) {
-                            item.setTranslationY(mMenuButton.getTop() - item.getTop());
-                            item.setVisibility(GONE);
-                            label.setVisibility(GONE);
-                        } else {
-                            item.setTranslationY(0);
-                            item.setVisibility(VISIBLE);
-                            label.setVisibility(VISIBLE);
-                        }
-                    }
-                }
+                item.setTranslationX(0);
+                item.setTranslationY(0);
+                item.setVisibility(VISIBLE);
             }
-            if (!animating && getBackground() != null) {
-                if (!mOpen) {
-                    getBackground().setAlpha(0);
-                } else {
-                    getBackground().setAlpha(0xff);
-                }
+            if (labels) {
+                mMenuItemLabels.get(i).setVisibility(mOpen ? VISIBLE : GONE);
+            } else if (mLabelsCreated) {
+                // Circle menus never show labels.
+                mMenuItemLabels.get(i).setVisibility(GONE);
             }
         }
+        setScrimProgress(mOpen ? 1f : 0f);
     }
 
     /**
@@ -380,7 +631,9 @@ public class FloatingActionMenu extends ViewGroup {
      */
     @Override
     public Parcelable onSaveInstanceState() {
-        d("onSaveInstanceState");
+        if (DEBUG) {
+            d("onSaveInstanceState");
+        }
         Bundle bundle = new Bundle();
         bundle.putParcelable("instanceState", super.onSaveInstanceState());
         bundle.putBoolean("mOpen", mOpen);
@@ -393,35 +646,105 @@ public class FloatingActionMenu extends ViewGroup {
      */
     @Override
     public void onRestoreInstanceState(Parcelable state) {
-        d("onRestoreInstanceState");
+        if (DEBUG) {
+            d("onRestoreInstanceState");
+        }
         if (state instanceof Bundle) {
             Bundle bundle = (Bundle) state;
             mOpen = bundle.getBoolean("mOpen");
+            mState = mOpen ? STATE_OPEN : STATE_CLOSED;
+            if (mOpen && !mLayoutEngine.isCircle()) {
+                createLabels();
+            }
             // ... load everything
             state = bundle.getParcelable("instanceState");
         }
         super.onRestoreInstanceState(state);
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mScrimLayer = MenuScrimLayer.register(this);
+    }
+
     @Override
     protected void onDetachedFromWindow() {
-        d("onDetachedFromWindow");
+        if (DEBUG) {
+            d("onDetachedFromWindow");
+        }
+        if (mSpringRunning) {
+            // Frames stop while detached, jump to the end of the transition.
+            stopSpring();
+            mSpring.reset(mSpring.getTarget());
+            mAnimationEngine.apply(mSpring.getPosition());
+            applyAnimationFrame();
+            onAnimationFinished(mAnimatingOpen);
+        }
+        restoreLayers();
+        cancelItemPress();
+        if (mScrimLayer != null) {
+            mScrimLayer.unregister(this);
+            mScrimLayer = null;
+        }
         //getBackground().setAlpha(bgAlpha);//reset default alpha
         super.onDetachedFromWindow();
     }
 
+    /**
+     * The background color is not drawn as the view background but as the scrim behind the open menu.
+     */
     @Override
     public void setBackground(Drawable background) {
-        if (background instanceof ColorDrawable) {
-            // after activity finish and relaucher , background drawable state still remain?
-            int bgAlpha = Color.alpha(((ColorDrawable) background).getColor());
-            d("bg:" + Integer.toHexString(bgAlpha));
-            super.setBackground(background);
+        setScrimColor(background);
+    }
+
+    /**
+     * Before API 16 the View constructor assigns the XML background through this method, route it to the
+     * scrim as well.
+     */
+    @SuppressWarnings("deprecation")
+    @Override
+    public void setBackgroundDrawable(Drawable background) {
+        setScrimColor(background);
+    }
+
+    /**
+     * Sets the color of the scrim from a color background, or clears it.
+     */
+    private void setScrimColor(Drawable background) {
+        if (background == null) {
+            if (mScrim != null) {
+                mScrim.setColor(Color.TRANSPARENT);
+                invalidate();
+            }
+        } else if (background instanceof ColorDrawable) {
+            int color = ((ColorDrawable) background).getColor();
+            if (DEBUG) {
+                d("bg:" + Integer.toHexString(Color.alpha(color)));
+            }
+            getScrim().setColor(color);
+            invalidate();
         } else {
             throw new IllegalArgumentException("floating only support color background");
         }
     }
 
+    /**
+     * Draws the scrim below the children.
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (mScrim != null) {
+            mScrim.draw(canvas, getWidth(), getHeight());
+        }
+        if (mItemRenderer != null) {
+            mItemRenderer.draw(canvas, mMenuItems, mMenuItemLabels, mLayoutEngine.getPositions(),
+                    needsLabels());
+        }
+        super.dispatchDraw(canvas);
+    }
+
     //-- Open and close methods methods --//
 
     /**
@@ -439,8 +762,34 @@ public class FloatingActionMenu extends ViewGroup {
      * Opens the FloatingActionMenu.
      */
     public void open() {
-        d("open");
+        if (DEBUG) {
+            d("open");
+        }
+        // Repeated requests coalesce with the running transition.
+        if (mState == STATE_OPEN || mState == STATE_OPENING) {
+            return;
+        }
+        if (mScrimLayer != null) {
+            // One menu of the window is open at a time.
+            mScrimLayer.onMenuOpening(this);
+        }
+        mSettlingFromProgress = mState == STATE_SCRUBBING;
+        mState = STATE_OPENING;
+        if (!mLayoutEngine.isCircle()) {
+            // The labels are shown at the end of the transition, they are measured and laid out in the next pass.
+            createLabels();
+        }
+        if (mMetrics != null) {
+            mMetrics.onTransitionRequested(true, System.nanoTime());
+        }
+        final boolean trace = MenuTrace.COMPILED && MenuTrace.isEnabled();
+        if (trace) {
+            MenuTrace.begin(MenuTrace.START_OPEN);
+        }
         startOpenAnimator();
+        if (trace) {
+            MenuTrace.end();
+        }
         mOpen = true;
         if (onMenuToggleListener != null) {
             onMenuToggleListener.onMenuToggle(true);
@@ -451,141 +800,894 @@ public class FloatingActionMenu extends ViewGroup {
      * Closes the FloatingActionMenu.
      */
     public void close() {
+        if (mState == STATE_CLOSED || mState == STATE_CLOSING) {
+            return;
+        }
+        // Closing for any other reason than a click abandons the pressed item.
+        cancelItemPress();
+        mSettlingFromProgress = mState == STATE_SCRUBBING;
+        mState = STATE_CLOSING;
+        if (mMetrics != null) {
+            mMetrics.onTransitionRequested(false, System.nanoTime());
+        }
+        final boolean trace = MenuTrace.COMPILED && MenuTrace.isEnabled();
+        if (trace) {
+            MenuTrace.begin(MenuTrace.START_CLOSE);
+        }
         startCloseAnimator();
+        if (trace) {
+            MenuTrace.end();
+        }
         mOpen = false;
         if (onMenuToggleListener != null) {
-            onMenuToggleListener.onMenuToggle(true);
+            onMenuToggleListener.onMenuToggle(false);
         }
     }
 
-    //-- Animation methods. --//
-
     /**
-     * Initiates all of the closing animations.
+     * Returns the menu to a clean closed state at once, without animating and without notifying the
+     * OnMenuToggleListener, e.g. before the RecyclerView row holding it is bound to other data. Running
+     * animations are cancelled, a drag or pressed item is dropped and the scrim is hidden.
      */
-    protected void startCloseAnimator() {
-        mCloseAnimatorSet.start();
-        for (ItemAnimator anim : mMenuItemAnimators) {
-            anim.startCloseAnimator();
+    public void reset() {
+        stopSpring();
+        if (mAnimator != null) {
+            mAnimator.cancel();
+        }
+        if (mDragHandler != null) {
+            mDragHandler.cancel();
+        }
+        if (mMetrics != null) {
+            mMetrics.onTransitionAborted(System.nanoTime());
+        }
+        restoreLayers();
+        mOpen = false;
+        mState = STATE_CLOSED;
+        mSettlingFromProgress = false;
+        mProgress = 0f;
+        mPressedItem = -1;
+        cancelItemPress();
+        if (mMenuButton != null) {
+            mIcon.setRotation(0f);
+            mMenuButton.setRotation(0f);
+            if (mItemsChanged || mLayoutEngine.getCount() < mMenuItems.size()) {
+                // Not all items were laid out yet (e.g. a row bound before its first layout), the next
+                // layout pass applies the settled state.
+                mItemsChanged = true;
+                requestLayout();
+            } else {
+                applySettledState();
+            }
         }
+        invalidate();
     }
 
     /**
-     * Initiating all of the opening animations.
+     * Creates the labels and the animation clock, which are otherwise created on the first open, once the
+     * UI thread is idle. Call it after inflating a menu that is likely to be opened, so the first open does
+     * not pay for them while a screen with several menus still inflates as fast as bare buttons.
      */
-    protected void startOpenAnimator() {
-        mOpenAnimatorSet.start();
-        for (ItemAnimator anim : mMenuItemAnimators) {
-            anim.startOpenAnimator();
-        }
+    public void prewarm() {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (mAnimator == null) {
+                    createDefaultAnimator();
+                }
+                if (!mLayoutEngine.isCircle()) {
+                    createLabels();
+                }
+                return false;
+            }
+        });
     }
 
+    //-- Progress methods --//
+
     /**
-     * Adds a new menu item to the FloatingActionMenu.
-     * @param item The FloatingActionButton to add to the menu.
+     * Positions every item, the icon rotation and the scrim at the given open progress, without animating.
+     * The menu stays at this progress, e.g. to follow a gesture, until {@link #settleProgress(float)},
+     * {@link #open()} or {@link #close()} is called. No Animator is started and nothing is allocated.
+     *
+     * @param progress From 0 (closed) to 1 (open).
      */
-    public void addMenuItem(FloatingActionButton item) {
-        mMenuItems.add(item);
-        mMenuItemAnimators.add(new ItemAnimator(item));
-
-        TextView button = new TextView(getContext());
-
-        LayoutParams params = new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
-        button.setLayoutParams(params);
-
-        button.setBackgroundResource(R.drawable.rounded_corners);
-
-        button.setTextColor(Color.WHITE);
-        button.setText(item.getContentDescription());
-
-        Integer paddingSize = (int)button.getTextSize() / 3;
+    public void setProgress(float progress) {
+        if (mState != STATE_SCRUBBING) {
+            stopSpring();
+            if (mAnimator != null) {
+                mAnimator.cancel();
+            }
+            prepareFullRangeAnimation();
+            mState = STATE_SCRUBBING;
+            onAnimationStarted(true);
+            for (int i = 0; i < mMenuItemLabels.size(); i++) {
+                mMenuItemLabels.get(i).setVisibility(GONE);
+            }
+        }
+        mProgress = progress < 0f ? 0f : progress > 1f ? 1f : progress;
+        // Keep the spring at rest on the progress, so open() or close() settles from it even without
+        // settleProgress().
+        mSpring.reset(mProgress);
+        mAnimationEngine.apply(mProgress);
+        applyAnimationFrame();
+    }
 
-        button.setPadding(paddingSize, paddingSize, paddingSize, paddingSize);
+    /**
+     * Returns the open progress of the menu, from 0 (closed) to 1 (open), as of the last frame.
+     */
+    public float getProgress() {
+        if (mState == STATE_SCRUBBING) {
+            return mProgress;
+        }
+        if (isAnimating()) {
+            return mAnimationEngine.getAlpha();
+        }
+        return mOpen ? 1f : 0f;
+    }
 
-        addView(button);
-        mMenuItemLabels.add(button);
-        item.setTag(button);
-        item.setOnClickListener(mOnItemClickListener);
-        button.setOnClickListener(mOnItemClickListener);
+    /**
+     * Animates the menu from the progress set by {@link #setProgress(float)} to the open or closed state,
+     * whichever is closer, or the direction of a fling.
+     *
+     * @param velocity The velocity of the gesture in progress per second, positive towards open.
+     */
+    public void settleProgress(float velocity) {
+        if (mState != STATE_SCRUBBING) {
+            return;
+        }
+        boolean open = velocity > SETTLE_VELOCITY || (velocity > -SETTLE_VELOCITY && mProgress >= 0.5f);
+        if (mSpringAnimation) {
+            mSpring.reset(mProgress);
+            mSpring.setVelocity(velocity);
+        }
+        if (open) {
+            open();
+        } else {
+            close();
+        }
     }
 
     /**
-     * Sets the default animation for the FAM icon, which is simply rotation.
+     * Scrub the menu open and closed by dragging the menu button towards the items (default false).
+     * On release the menu settles to open or closed.
      */
-    private void createDefaultIconAnimation() {
-        Animator.AnimatorListener listener = new Animator.AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                animating = true;
+    public void setDragToOpen(boolean dragToOpen) {
+        if (dragToOpen && mDragHandler == null) {
+            mDragHandler = new DragHandler();
+        } else if (!dragToOpen) {
+            mDragHandler = null;
+        }
+        if (mMenuButton != null) {
+            mMenuButton.setOnTouchListener(mDragHandler);
+        }
+    }
+
+    //-- Animation methods. --//
+
+    /**
+     * Initiates all of the closing animations.
+     */
+    protected void startCloseAnimator() {
+        if (mSpringAnimation) {
+            startSpring(false);
+        } else {
+            startAnimator(false);
+        }
+    }
+
+    /**
+     * Initiating all of the opening animations.
+     */
+    protected void startOpenAnimator() {
+        if (mSpringAnimation) {
+            startSpring(true);
+        } else {
+            startAnimator(true);
+        }
+    }
+
+    /**
+     * Prepares the animation tables from the current state of the menu and (re)starts the animation clock.
+     * A running animation is retargeted from where it currently is.
+     */
+    private void startAnimator(boolean open) {
+        if (mAnimator == null) {
+            createDefaultAnimator();
+        }
+        final float fromAlpha = mAnimator.isRunning() || mSpringRunning || mSettlingFromProgress
+                ? mAnimationEngine.getAlpha() : (mOpen ? 1f : 0f);
+        stopSpring();
+        mAnimator.cancel();
+
+        final int count = mMenuItems.size();
+        mAnimationEngine.prepare(count);
+        for (int i = 0; i < count; i++) {
+            FloatingActionButton item = mMenuItems.get(i);
+            float toX = open ? 0 : mMenuButton.getLeft() - item.getLeft();
+            float toY = open ? 0 : mMenuButton.getTop() - item.getTop();
+            mAnimationEngine.setItem(i, item.getTranslationX(), item.getTranslationY(), toX, toY);
+        }
+        mAnimationEngine.setRotation(mIcon.getRotation(), open ? 135f : 0f);
+        mAnimationEngine.setAlpha(fromAlpha, open ? 1f : 0f);
+
+        mAnimatingOpen = open;
+        mAnimator.setInterpolator(open ? DEFAULT_OPEN_INTERPOLATOR : DEFAULT_CLOSE_INTERPOLATOR);
+        mAnimator.setDuration(duration);
+        mAnimator.start();
+    }
+
+    /**
+     * Retargets the spring to the open or closed state. A spring that is already moving keeps its position
+     * and velocity, otherwise it starts from the current state with the animation tables spanning the
+     * whole closed to open range, so no table is rebuilt and nothing is allocated when retargeting.
+     */
+    private void startSpring(boolean open) {
+        if (!mSpringRunning) {
+            if (mAnimator != null) {
+                mAnimator.cancel();
             }
+            prepareFullRangeAnimation();
+            if (!mSettlingFromProgress) {
+                mSpring.reset(mOpen ? 1f : 0f);
+            }
+            mSpringRunning = true;
+            mLastSpringFrameTime = AnimationUtils.currentAnimationTimeMillis();
+            ViewCompat.postOnAnimation(this, mSpringFrame);
+        }
+        mSpring.setTarget(open ? 1f : 0f);
+        mAnimatingOpen = open;
+        onAnimationStarted(open);
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                animating = false;
+    /**
+     * Prepares the animation tables to span the whole transition, from the closed positions laid out on the
+     * menu button (progress 0) to the laid out open positions (progress 1).
+     */
+    private void prepareFullRangeAnimation() {
+        final int count = mMenuItems.size();
+        mAnimationEngine.prepare(count);
+        for (int i = 0; i < count; i++) {
+            FloatingActionButton item = mMenuItems.get(i);
+            mAnimationEngine.setItem(i, mMenuButton.getLeft() - item.getLeft(),
+                    mMenuButton.getTop() - item.getTop(), 0, 0);
+        }
+        mAnimationEngine.setRotation(0f, 135f);
+        mAnimationEngine.setAlpha(0f, 1f);
+    }
+
+    /**
+     * Stops the spring where it is, if it is running.
+     */
+    private void stopSpring() {
+        if (mSpringRunning) {
+            removeCallbacks(mSpringFrame);
+            mSpringRunning = false;
+        }
+    }
+
+    /**
+     * Shows the items when they start to open, hides the labels when they start to close.
+     */
+    private void onAnimationStarted(boolean open) {
+        promoteLayers();
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            if (open) {
+                mMenuItems.get(i).setVisibility(VISIBLE);
+            } else if (mLabelsCreated) {
+                mMenuItemLabels.get(i).setVisibility(GONE);
             }
+        }
+        mLabelsDamaged = !open && needsLabels();
+    }
 
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                animating = false;
+    /**
+     * Settles the state of the menu, shows the labels once opened and hides the items once closed.
+     */
+    private void onAnimationFinished(boolean open) {
+        mState = open ? STATE_OPEN : STATE_CLOSED;
+        restoreLayers();
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            if (!open) {
+                mMenuItems.get(i).setVisibility(GONE);
+            } else if (mLabelsCreated) {
+                mMenuItemLabels.get(i).setVisibility(VISIBLE);
+            }
+        }
+        if (mItemRenderer != null) {
+            invalidate();
+        }
+        if (mMetrics != null) {
+            mMetrics.onTransitionFinished(System.nanoTime());
+        }
+    }
+
+    /**
+     * Renders the views that move during the transition (the menu button, its icon, the items and any
+     * visible label) into hardware layers, so a frame only composites them instead of redrawing them and
+     * their shadows. Their own layer types are kept in a tag and restored at the end of the transition.
+     */
+    private void promoteLayers() {
+        if (!mAnimationLayers || mLayersPromoted || mMenuButton == null) {
+            return;
+        }
+        mLayersPromoted = true;
+        promoteLayer(mMenuButton);
+        promoteLayer(mIcon);
+        if (mItemRenderer != null) {
+            // Drawn items are part of the menu's own drawing.
+            return;
+        }
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            promoteLayer(mMenuItems.get(i));
+        }
+        for (int i = 0; i < mMenuItemLabels.size(); i++) {
+            MenuLabel label = mMenuItemLabels.get(i);
+            if (label.getVisibility() == VISIBLE) {
+                promoteLayer(label);
             }
+        }
+    }
 
-            @Override
-            public void onAnimationRepeat(Animator animation) {
+    /**
+     * Restores the layer types of the views promoted by {@link #promoteLayers()}, if any. Safe to call at
+     * any point of a transition, e.g. when it is cancelled.
+     */
+    private void restoreLayers() {
+        if (!mLayersPromoted) {
+            return;
+        }
+        mLayersPromoted = false;
+        restoreLayer(mMenuButton);
+        restoreLayer(mIcon);
+        for (int i = 0; i < mMenuItems.size(); i++) {
+            restoreLayer(mMenuItems.get(i));
+        }
+        for (int i = 0; i < mMenuItemLabels.size(); i++) {
+            restoreLayer(mMenuItemLabels.get(i));
+        }
+    }
 
+    private static void promoteLayer(View view) {
+        if (view.getTag(R.id.fam_layer_type) == null) {
+            view.setTag(R.id.fam_layer_type, view.getLayerType());
+            view.setLayerType(LAYER_TYPE_HARDWARE, null);
+        }
+    }
+
+    private static void restoreLayer(View view) {
+        Object layerType = view.getTag(R.id.fam_layer_type);
+        if (layerType instanceof Integer) {
+            view.setTag(R.id.fam_layer_type, null);
+            view.setLayerType((Integer) layerType, null);
+        }
+    }
+
+    /**
+     * Determines whether or not the items are in transition, i.e. not at their laid out open/closed state.
+     */
+    private boolean isAnimating() {
+        return mState == STATE_OPENING || mState == STATE_CLOSING || mState == STATE_SCRUBBING;
+    }
+
+    /**
+     * Applies the last frame computed by the animation engine to the items, the icon and the background.
+     */
+    private void applyAnimationFrame() {
+        final boolean trace = MenuTrace.COMPILED && MenuTrace.isEnabled();
+        if (trace) {
+            MenuTrace.begin(MenuTrace.FRAME);
+        }
+        final Rect damage = mFrameDamage;
+        damage.setEmpty();
+        final int count = Math.min(mAnimationEngine.getCount(), mMenuItems.size());
+        for (int i = 0; i < count; i++) {
+            FloatingActionButton item = mMenuItems.get(i);
+            unionTranslatedBounds(damage, item);
+            item.setTranslationX(mAnimationEngine.getTranslationX(i));
+            item.setTranslationY(mAnimationEngine.getTranslationY(i));
+            unionTranslatedBounds(damage, item);
+        }
+        if (mLabelsDamaged) {
+            mLabelsDamaged = false;
+            final int[] positions = mLayoutEngine.getPositions();
+            for (int i = 0; i < mMenuItemLabels.size(); i++) {
+                int p = MenuLayoutEngine.itemOffset(i) + MenuLayoutEngine.LABEL;
+                damage.union(positions[p + MenuLayoutEngine.LEFT], positions[p + MenuLayoutEngine.TOP],
+                        positions[p + MenuLayoutEngine.RIGHT], positions[p + MenuLayoutEngine.BOTTOM]);
             }
-        };
-        ObjectAnimator collapseAnimator = ObjectAnimator.ofFloat(
-                mIcon,
-                "rotation",
-                135f,
-                0f
-        );
+        }
+        float rotation = mAnimationEngine.getRotation();
+        mIcon.setRotation(rotation);
+        mMenuButton.setRotation(rotation);
+        unionRotatedBounds(damage, mMenuButton);
+        unionRotatedBounds(damage, mIcon);
+        if (setScrimProgress(mAnimationEngine.getAlpha())) {
+            mScrim.unionBounds(damage, getWidth(), getHeight());
+        }
+        if (mItemRenderer != null && !damage.isEmpty()) {
+            // Child views invalidate themselves as they move, drawn items only need their own area redrawn.
+            invalidate(damage.left, damage.top, damage.right, damage.bottom);
+            if (mOnMenuInvalidateListener != null) {
+                mOnMenuInvalidateListener.onMenuInvalidate(this, damage);
+            }
+        }
+        if (mMetrics != null) {
+            mMetrics.onFrame(System.nanoTime());
+        }
+        if (trace) {
+            MenuTrace.end();
+        }
+    }
 
-        ObjectAnimator expandAnimator = ObjectAnimator.ofFloat(
-                mIcon,
-                "rotation",
-                0f,
-                135f
-        );
+    /**
+     * Adds the bounds of a view, as currently translated, to the given rect.
+     */
+    private static void unionTranslatedBounds(Rect rect, View view) {
+        final float x = view.getTranslationX();
+        final float y = view.getTranslationY();
+        rect.union(view.getLeft() + (int) Math.floor(x), view.getTop() + (int) Math.floor(y),
+                view.getRight() + (int) Math.ceil(x), view.getBottom() + (int) Math.ceil(y));
+    }
 
-        if (getBackground() != null) {
+    /**
+     * Adds the bounds a view covers at any rotation around its center, a square around its diagonal, to
+     * the given rect.
+     */
+    private static void unionRotatedBounds(Rect rect, View view) {
+        final int width = view.getWidth();
+        final int height = view.getHeight();
+        final int radius = (int) Math.ceil(Math.sqrt(width * width + height * height) / 2);
+        final int centerX = view.getLeft() + width / 2;
+        final int centerY = view.getTop() + height / 2;
+        rect.union(centerX - radius, centerY - radius, centerX + radius + 1, centerY + radius + 1);
+    }
 
+    /**
+     * Adds a new menu item to the FloatingActionMenu.
+     * @param item The FloatingActionButton to add to the menu.
+     */
+    public void addMenuItem(FloatingActionButton item) {
+        mMenuItems.add(item);
+        if (mItemRenderer != null && item.getParent() == this) {
+            removeView(item);
+        }
 
-            ValueAnimator hideBackgroundAnimator = ObjectAnimator.ofInt(0xff, 0);
-            hideBackgroundAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    Integer alpha = (Integer) animation.getAnimatedValue();
-                    //System.out.println(alpha);
-                    getBackground().setAlpha(alpha > 0xff ? 0xff : alpha);
+        item.setOnClickListener(mOnItemClickListener);
+        item.setOnTouchListener(mItemPressHandler);
+        if (mLabelsCreated) {
+            MenuLabel label = labelOf(item);
+            if (mItemRenderer == null) {
+                // Below the menu button and icon.
+                addView(label, 0);
+            }
+            mMenuItemLabels.add(label);
+        }
+        mItemsChanged = true;
+    }
+
+    /**
+     * Creates the labels of all menu items, if they do not exist yet. New menu items get their label
+     * right away from then on.
+     */
+    private void createLabels() {
+        if (mLabelsCreated) {
+            return;
+        }
+        mLabelsCreated = true;
+        final int count = mMenuItems.size();
+        mMenuItemLabels.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            FloatingActionButton item = mMenuItems.get(i);
+            MenuLabel label = labelOf(item);
+            mMenuItemLabels.add(label);
+            if (mItemRenderer == null) {
+                // Below the menu button and icon, without requesting a layout per view.
+                addViewInLayout(label, 0, label.getLayoutParams(), true);
+            }
+        }
+        mItemsChanged = true;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Returns the label of a menu item, remembered as the tag of the item, creating it if the item has none
+     * yet (recycled adapter items and prepared items already have one), and wires its click listener.
+     */
+    private MenuLabel labelOf(FloatingActionButton item) {
+        MenuLabel label;
+        if (item.getTag() instanceof MenuLabel) {
+            label = (MenuLabel) item.getTag();
+        } else {
+            label = newLabel(getContext(), item.getContentDescription());
+            item.setTag(label);
+        }
+        label.setMaxTextWidth(mLabelMaxWidth);
+        label.setOnClickListener(mOnItemClickListener);
+        label.setOnTouchListener(mItemPressHandler);
+        return label;
+    }
+
+    /**
+     * Creates a label showing the given text. It does not depend on any menu, so a {@link MenuSpec} can
+     * create labels on a background thread.
+     */
+    @SuppressWarnings("deprecation")
+    static MenuLabel newLabel(Context context, CharSequence text) {
+        MenuLabel button = new MenuLabel(context);
+
+        LayoutParams params = new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+        button.setLayoutParams(params);
+
+        button.setBackgroundDrawable(MenuDrawablePool.newLabelBackground(context));
+
+        button.setText(text);
+
+        int paddingSize = (int)button.getTextSize() / 3;
+
+        button.setPadding(paddingSize, paddingSize, paddingSize, paddingSize);
+        return button;
+    }
+
+    //-- Batch update methods --//
+
+    /**
+     * Starts a batch of changes to the menu items. Layout requests are deferred until the matching
+     * {@link #endUpdate()}, so the whole batch is committed in a single measure/layout pass.
+     * Calls can be nested.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch of changes started with {@link #beginUpdate()}, and requests a single layout if any
+     * change of the batch needed one.
+     */
+    public void endUpdate() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("endUpdate() without matching beginUpdate()");
+        }
+        if (--mUpdateDepth == 0 && mLayoutRequestedDuringUpdate) {
+            mLayoutRequestedDuringUpdate = false;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    /**
+     * Attaches the items of a prepared {@link MenuSpec}, with their icons and measured labels, and applies
+     * its layout pattern and geometry, all in a single layout pass. The current items (and the adapter, if
+     * any) are replaced.
+     *
+     * @throws IllegalStateException If the prepared menu was attached before.
+     */
+    public void setPreparedMenu(MenuSpec.PreparedMenu menu) {
+        menu.attach();
+        beginUpdate();
+        try {
+            setIsCircle(menu.mIsCircle);
+            if (menu.mRadius >= 0) {
+                setmRadius(menu.mRadius);
+            }
+            if (menu.mMultipleOfFB > 0) {
+                setMultipleOfFB(menu.mMultipleOfFB);
+            }
+            if (menu.mItemGap >= 0) {
+                setmItemGap(menu.mItemGap);
+            }
+            setMenuItems(menu.mItems);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Replaces all menu items (and the adapter, if any) with the given buttons, in a single layout pass.
+     * @param items The FloatingActionButtons to show, in order. They must not have another parent.
+     */
+    public void setMenuItems(List<FloatingActionButton> items) {
+        beginUpdate();
+        try {
+            cancelItemPress();
+            if (mAdapter != null) {
+                setAdapter(null);
+            }
+            while (!mMenuItems.isEmpty()) {
+                removeMenuItemAt(mMenuItems.size() - 1);
+            }
+            final int count = items.size();
+            mMenuItems.ensureCapacity(count);
+            mLayoutEngine.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                FloatingActionButton item = items.get(i);
+                if (mItemRenderer == null && item.getParent() == null) {
+                    // Below the menu button and icon.
+                    addViewInLayout(item, 0, item.getLayoutParams() != null
+                            ? item.getLayoutParams() : generateDefaultLayoutParams(), true);
                 }
-            });
-            ValueAnimator showBackgroundAnimator = ObjectAnimator.ofInt(0, 0xff);
-            showBackgroundAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
+                addMenuItem(item);
+            }
+            mPressedItem = -1;
+            mLayoutRequestedDuringUpdate = true;
+        } finally {
+            endUpdate();
+        }
+    }
+
+    //-- Adapter methods --//
 
-                    Integer alpha = (Integer) animation.getAnimatedValue();
-                    //System.out.println(alpha);
-                    getBackground().setAlpha(alpha > 0xff ? 0xff : alpha);
+    /**
+     * Called by the adapter when its data changed. Changes are queued and applied together in the next
+     * measure pass, so a batch of notifications costs a single layout.
+     */
+    void onAdapterUpdate(int op, int first, int second) {
+        if (mPendingUpdates.add(op, first, second)) {
+            requestLayout();
+        }
+    }
+
+    /**
+     * Applies the queued adapter changes to the menu items, reusing recycled items where possible.
+     */
+    private void applyAdapterUpdates() {
+        final MenuUpdateQueue updates = mPendingUpdates;
+        if (mAdapter == null) {
+            updates.clear();
+            return;
+        }
+        if (updates.size() > 0) {
+            // The pressed item may move or go away.
+            cancelItemPress();
+        }
+        ensureBindCapacity(mMenuItems.size());
+        Arrays.fill(mNeedsBind, false);
+        for (int u = 0; u < updates.size(); u++) {
+            final int first = updates.first(u);
+            final int second = updates.second(u);
+            switch (updates.op(u)) {
+                case MenuUpdateQueue.INSERT:
+                    for (int i = 0; i < second; i++) {
+                        insertAdapterItem(first + i);
+                    }
+                    break;
+                case MenuUpdateQueue.REMOVE:
+                    for (int i = 0; i < second; i++) {
+                        mRecycledItems.add(removeMenuItemAt(first));
+                        removeBindFlag(first);
+                    }
+                    break;
+                case MenuUpdateQueue.MOVE:
+                    mMenuItems.add(second, mMenuItems.remove(first));
+                    if (mLabelsCreated) {
+                        mMenuItemLabels.add(second, mMenuItemLabels.remove(first));
+                    }
+                    moveBindFlag(first, second);
+                    break;
+                case MenuUpdateQueue.CHANGE:
+                    for (int i = 0; i < second; i++) {
+                        mNeedsBind[first + i] = true;
+                    }
+                    break;
+                case MenuUpdateQueue.RESET:
+                    final int count = mAdapter.getItemCount();
+                    while (mMenuItems.size() > count) {
+                        mRecycledItems.add(removeMenuItemAt(mMenuItems.size() - 1));
+                    }
+                    while (mMenuItems.size() < count) {
+                        insertAdapterItem(mMenuItems.size());
+                    }
+                    Arrays.fill(mNeedsBind, 0, count, true);
+                    break;
+            }
+        }
+        updates.clear();
+
+        final int count = mMenuItems.size();
+        for (int position = 0; position < count; position++) {
+            if (mNeedsBind[position]) {
+                FloatingActionButton item = mMenuItems.get(position);
+                mAdapter.onBindItem(item, position);
+                if (item.getTag() instanceof MenuLabel) {
+                    ((MenuLabel) item.getTag()).setText(item.getContentDescription());
                 }
-            });
+            }
+        }
+
+        mPressedItem = -1;
+        mItemsChanged = true;
+    }
 
-            mOpenAnimatorSet.playTogether(expandAnimator, showBackgroundAnimator);
-            mCloseAnimatorSet.playTogether(collapseAnimator, hideBackgroundAnimator);
+    /**
+     * Inserts a recycled, or new, adapter item at the given position. It is bound once the batch is applied.
+     */
+    private void insertAdapterItem(int position) {
+        FloatingActionButton item;
+        if (mRecycledItems.isEmpty()) {
+            item = mAdapter.onCreateItem(this);
+            if (item.getLayoutParams() == null) {
+                item.setLayoutParams(generateDefaultLayoutParams());
+            }
+            item.setOnClickListener(mOnItemClickListener);
+            item.setOnTouchListener(mItemPressHandler);
         } else {
-            mOpenAnimatorSet.playTogether(expandAnimator);
-            mCloseAnimatorSet.playTogether(collapseAnimator);
+            item = mRecycledItems.remove(mRecycledItems.size() - 1);
+        }
+        mMenuItems.add(position, item);
+        if (mLabelsCreated) {
+            MenuLabel label = labelOf(item);
+            mMenuItemLabels.add(position, label);
+            if (mItemRenderer == null) {
+                // Below the menu button and icon, without requesting a layout per view.
+                addViewInLayout(label, 0, label.getLayoutParams(), true);
+            }
         }
+        if (mItemRenderer == null) {
+            addViewInLayout(item, 0, item.getLayoutParams(), true);
+        }
+        insertBindFlag(position, true);
+    }
 
-        mOpenAnimatorSet.setInterpolator(DEFAULT_OPEN_INTERPOLATOR);
-        mCloseAnimatorSet.setInterpolator(DEFAULT_CLOSE_INTERPOLATOR);
+    /**
+     * Inserts the bind flag of an item inserted at the given position of mMenuItems.
+     */
+    private void insertBindFlag(int position, boolean needsBind) {
+        final int count = mMenuItems.size();
+        ensureBindCapacity(count);
+        System.arraycopy(mNeedsBind, position, mNeedsBind, position + 1, count - 1 - position);
+        mNeedsBind[position] = needsBind;
+    }
 
-        mOpenAnimatorSet.setDuration(duration);
-        mCloseAnimatorSet.setDuration(duration);
+    /**
+     * Moves the bind flag of an item moved within mMenuItems.
+     */
+    private void moveBindFlag(int from, int to) {
+        final boolean needsBind = mNeedsBind[from];
+        if (from < to) {
+            System.arraycopy(mNeedsBind, from + 1, mNeedsBind, from, to - from);
+        } else {
+            System.arraycopy(mNeedsBind, to, mNeedsBind, to + 1, from - to);
+        }
+        mNeedsBind[to] = needsBind;
+    }
 
-        mOpenAnimatorSet.addListener(listener);
-        mCloseAnimatorSet.addListener(listener);
+    private void ensureBindCapacity(int count) {
+        if (mNeedsBind.length < count) {
+            boolean[] flags = new boolean[Math.max(count, mNeedsBind.length * 2)];
+            System.arraycopy(mNeedsBind, 0, flags, 0, mNeedsBind.length);
+            mNeedsBind = flags;
+        }
+    }
+
+    /**
+     * Removes the bind flag of an item removed from the given position of mMenuItems.
+     * @return The removed flag.
+     */
+    private boolean removeBindFlag(int position) {
+        final boolean needsBind = mNeedsBind[position];
+        System.arraycopy(mNeedsBind, position + 1, mNeedsBind, position, mMenuItems.size() - position);
+        mNeedsBind[mMenuItems.size()] = false;
+        return needsBind;
+    }
+
+    /**
+     * Removes the item at the given position, and its label, from the menu.
+     * @return The removed item, reset so it can be reused.
+     */
+    private FloatingActionButton removeMenuItemAt(int position) {
+        FloatingActionButton item = mMenuItems.remove(position);
+        restoreLayer(item);
+        removeViewInLayout(item);
+        if (mLabelsCreated) {
+            removeViewInLayout(mMenuItemLabels.remove(position));
+        }
+        item.setTranslationX(0);
+        item.setTranslationY(0);
+        return item;
+    }
+
+    /**
+     * Creates the animation clock shared by the open and close animations.
+     */
+    private void createDefaultAnimator() {
+        MenuAnimatorListener listener = new MenuAnimatorListener();
+        mAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mAnimator.addUpdateListener(listener);
+        mAnimator.addListener(listener);
+    }
+
+    /**
+     * Calls the OnMenuItemClickListener for the item at the given index and closes the menu.
+     */
+    private void performItemClick(int index) {
+        if (mIntentItem == index) {
+            // The click completes the press.
+            mIntentItem = -1;
+        } else {
+            cancelItemPress();
+        }
+        if (onMenuItemClickListener != null && index >= 0) {
+            onMenuItemClickListener.onMenuItemClick(this, index, mMenuItems.get(index));
+        }
+        close();
+    }
+
+    /**
+     * Reports a press on the item at the given index to the OnMenuItemPressListener, if any. A press still
+     * pending on another item is cancelled first.
+     */
+    private void dispatchItemPress(int index) {
+        if (onMenuItemPressListener == null || index < 0 || index >= mMenuItems.size() || index == mIntentItem) {
+            return;
+        }
+        cancelItemPress();
+        mIntentItem = index;
+        onMenuItemPressListener.onMenuItemPress(this, index, mMenuItems.get(index));
+    }
+
+    /**
+     * Tells the OnMenuItemPressListener that the pending press will not be followed by a click, if any.
+     */
+    private void cancelItemPress() {
+        final int index = mIntentItem;
+        if (index < 0) {
+            return;
+        }
+        mIntentItem = -1;
+        if (onMenuItemPressListener != null && index < mMenuItems.size()) {
+            onMenuItemPressListener.onMenuItemPressCancel(this, index, mMenuItems.get(index));
+        }
+    }
+
+    /**
+     * Finds the drawn item under the given point. Once the menu has settled this is a constant time lookup
+     * in the layout geometry, only a running animation needs to walk the translated items.
+     */
+    private int hitTestDrawnItem(float x, float y) {
+        if (!isAnimating()) {
+            return mLayoutEngine.hitTest(x, y);
+        }
+        return mItemRenderer.hitTest(x, y, mMenuItems, mMenuItemLabels, mLayoutEngine.getPositions(),
+                needsLabels());
+    }
+
+    /**
+     * Hit-tests and dispatches touches on drawn items and labels.
+     * @return True if the event was consumed by an item.
+     */
+    private boolean onDrawnItemTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mPressedItem = mOpen ? hitTestDrawnItem(event.getX(), event.getY()) : -1;
+                dispatchItemPress(mPressedItem);
+                return mPressedItem >= 0;
+            case MotionEvent.ACTION_MOVE:
+                if (mPressedItem >= 0 && mIntentItem == mPressedItem
+                        && hitTestDrawnItem(event.getX(), event.getY()) != mPressedItem) {
+                    // Left the item, releasing now would not click it.
+                    cancelItemPress();
+                }
+                return mPressedItem >= 0;
+            case MotionEvent.ACTION_UP:
+                if (mPressedItem < 0) {
+                    return false;
+                }
+                int index = mPressedItem;
+                mPressedItem = -1;
+                if (index == hitTestDrawnItem(event.getX(), event.getY())) {
+                    performItemClick(index);
+                } else {
+                    cancelItemPress();
+                }
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                boolean pressed = mPressedItem >= 0;
+                mPressedItem = -1;
+                cancelItemPress();
+                return pressed;
+            default:
+                return false;
+        }
     }
 
     //-- Accessors --//
@@ -612,8 +1714,106 @@ public class FloatingActionMenu extends ViewGroup {
         return onMenuItemClickListener;
     }
 
+    /**
+     * Determines whether or not the items and labels are drawn by the menu instead of being child views.
+     */
+    public boolean isDrawingItems() {
+        return mItemRenderer != null;
+    }
+
+    /**
+     * Retrieves the MenuAdapter providing the menu items, if any.
+     */
+    public MenuAdapter getAdapter() {
+        return mAdapter;
+    }
+
     //-- Mutators --//
 
+    /**
+     * Sets the adapter providing the menu items. The current menu items are removed, they are replaced by
+     * the items of the adapter in the next layout pass. Pass null to remove all items.
+     */
+    public void setAdapter(MenuAdapter adapter) {
+        cancelItemPress();
+        if (mAdapter != null) {
+            mAdapter.setMenu(null);
+        }
+        while (!mMenuItems.isEmpty()) {
+            removeMenuItemAt(mMenuItems.size() - 1);
+        }
+        mRecycledItems.clear();
+        mPendingUpdates.clear();
+        mPressedItem = -1;
+        mItemsChanged = true;
+
+        mAdapter = adapter;
+        if (adapter != null) {
+            adapter.setMenu(this);
+            mPendingUpdates.add(MenuUpdateQueue.RESET, 0, 0);
+        }
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Resets the menu (see {@link #reset()}) and binds its items to the given adapter, e.g. when the
+     * RecyclerView row holding the menu is bound to other data. Unlike {@link #setAdapter(MenuAdapter)},
+     * the current items are kept and rebound in the next layout pass, so rebinding allocates nothing as
+     * long as the item count does not grow. The adapter must accept items created by the previous one.
+     */
+    public void rebind(@NonNull MenuAdapter adapter) {
+        reset();
+        if (adapter != mAdapter) {
+            if (mAdapter != null) {
+                mAdapter.setMenu(null);
+            }
+            mAdapter = adapter;
+            adapter.setMenu(this);
+        }
+        mPendingUpdates.clear();
+        mPendingUpdates.add(MenuUpdateQueue.RESET, 0, 0);
+        requestLayout();
+    }
+
+    /**
+     * Draw the menu items and their labels directly on the menu instead of keeping them as child views
+     * (default false). This flattens the view hierarchy to the menu button, which saves measuring,
+     * layout and drawing a FloatingActionButton and a label view per item. Clicks are hit-tested by the
+     * menu and still reported to the OnMenuItemClickListener. Items keep their drawables and content
+     * description, but the pressed state and the elevation shadow of Lollipop are not rendered.
+     */
+    public void setDrawingItems(boolean drawItems) {
+        if (drawItems == (mItemRenderer != null)) {
+            return;
+        }
+        mItemsChanged = true;
+        if (drawItems) {
+            mItemRenderer = new MenuItemRenderer(getContext());
+            for (int i = 0; i < mMenuItems.size(); i++) {
+                removeView(mMenuItems.get(i));
+            }
+            for (int i = 0; i < mMenuItemLabels.size(); i++) {
+                removeView(mMenuItemLabels.get(i));
+            }
+        } else {
+            mItemRenderer = null;
+            mPressedItem = -1;
+            for (int i = 0; i < mMenuItems.size(); i++) {
+                // Bypass addView(), these are already menu items.
+                FloatingActionButton item = mMenuItems.get(i);
+                addViewInLayout(item, 0, item.getLayoutParams() != null
+                        ? item.getLayoutParams() : generateDefaultLayoutParams(), true);
+            }
+            for (int i = 0; i < mMenuItemLabels.size(); i++) {
+                MenuLabel label = mMenuItemLabels.get(i);
+                addViewInLayout(label, 0, label.getLayoutParams(), true);
+            }
+        }
+        requestLayout();
+        invalidate();
+    }
+
     /**
      * Assigns an OnMenuToggleListener to the FloatingActionMenu.
      */
@@ -628,25 +1828,125 @@ public class FloatingActionMenu extends ViewGroup {
         this.onMenuItemClickListener = onMenuItemClickListener;
     }
 
+    /**
+     * Assigns an OnMenuItemPressListener to the FloatingActionMenu.
+     */
+    public void setOnMenuItemPressListener(OnMenuItemPressListener onMenuItemPressListener) {
+        cancelItemPress();
+        this.onMenuItemPressListener = onMenuItemPressListener;
+    }
+
     /**
      * Set as circle(default) or line pattern
      */
     public void setIsCircle(boolean isCircle) {
-        this.isCircle = isCircle;
+        mLayoutEngine.setIsCircle(isCircle);
+        if (!isCircle && mOpen) {
+            createLabels();
+        }
+        if (mLabelsCreated) {
+            // An open line menu shows its labels, a circle menu never does.
+            final int visibility = needsLabels() && mOpen ? VISIBLE : GONE;
+            for (int i = 0; i < mMenuItemLabels.size(); i++) {
+                mMenuItemLabels.get(i).setVisibility(visibility);
+            }
+        }
+        mItemsChanged = true;
+        requestLayout();
     }
 
     /**
      * Set the radius of menu, default 256
      */
     public void setmRadius(int mRadius) {
-        this.mRadius = mRadius;
+        mLayoutEngine.setRadius(mRadius);
+        mItemsChanged = true;
+        requestLayout();
     }
 
     /**
      * Set radius as multiple of width of floating action button
      */
     public void setMultipleOfFB(float multipleOfFB) {
-        this.multipleOfFB = multipleOfFB;
+        mLayoutEngine.setMultipleOfFB(multipleOfFB);
+        mItemsChanged = true;
+        requestLayout();
+    }
+
+    /**
+     * Only usefully in Circle pattern - sets the arc the items are spread over, in degrees. An angle of 0
+     * is left of the menu button and 90 is above it. Default is a quarter circle from 0 to 90. Items that
+     * would overlap on the arc overflow into concentric rings.
+     */
+    public void setArc(float startAngle, float sweepAngle) {
+        mLayoutEngine.setArc(startAngle, sweepAngle);
+        mItemsChanged = true;
+        requestLayout();
+    }
+
+    /**
+     * Only usefully in Circle pattern - sets the distance between rings of items, 0 (default) to use the
+     * item size plus the item gap.
+     */
+    public void setRingSpacing(int ringSpacing) {
+        mLayoutEngine.setRingSpacing(ringSpacing);
+        mItemsChanged = true;
+        requestLayout();
+    }
+
+    /**
+     * Installs a debugging listener receiving the area the menu invalidates on each animation frame that
+     * changes drawn items (see {@link #setDrawingItems(boolean)}), e.g. to verify in tests that a transition
+     * without scrim only invalidates the moving items. Menus with child views are not reported, each moving
+     * view invalidates its own bounds. Pass null (default) to remove it.
+     */
+    public void setOnMenuInvalidateListener(OnMenuInvalidateListener listener) {
+        mOnMenuInvalidateListener = listener;
+    }
+
+    /**
+     * Installs a listener receiving the timing of the open/close transitions and of the measure and layout
+     * passes of the menu, e.g. to forward them to telemetry. Pass null (default) to remove it; without a
+     * listener no timing is taken at all.
+     */
+    @SuppressWarnings("deprecation")
+    public void setOnMenuMetricsListener(OnMenuMetricsListener listener) {
+        if (listener == null) {
+            mMetrics = null;
+            return;
+        }
+        WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        mMetrics = new MenuMetrics(listener, (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60f)));
+    }
+
+    /**
+     * Render the menu button, the items and their labels into hardware layers while the menu animates
+     * (default true), and restore their own layer types once it settles or is reset. Disable it on GPUs
+     * where allocating the layers costs more than redrawing the views.
+     */
+    public void setAnimationLayers(boolean animationLayers) {
+        mAnimationLayers = animationLayers;
+        if (!animationLayers) {
+            restoreLayers();
+        } else if (isAnimating()) {
+            promoteLayers();
+        }
+    }
+
+    /**
+     * Animate open/close with a spring (true) instead of a fixed duration tween (false, default). Toggling
+     * while the spring moves retargets it from its current position and velocity.
+     */
+    public void setSpringAnimation(boolean springAnimation) {
+        mSpringAnimation = springAnimation;
+    }
+
+    /**
+     * Sets the stiffness (default 400) and damping ratio (default 0.7, 1 does not overshoot) of the spring.
+     */
+    public void setSpring(float stiffness, float dampingRatio) {
+        mSpring.setSpring(stiffness, dampingRatio);
     }
 
     /**
@@ -656,15 +1956,196 @@ public class FloatingActionMenu extends ViewGroup {
         this.duration = duration;
     }
 
+    /**
+     * Only usefully in Line pattern - limits the width of the label text, in pixels. Longer labels are
+     * ellipsized at their end, the text is laid out again only when this width changes.
+     */
+    public void setLabelMaxWidth(int maxWidth) {
+        mLabelMaxWidth = maxWidth > 0 ? maxWidth : Integer.MAX_VALUE;
+        for (int i = 0; i < mMenuItemLabels.size(); i++) {
+            mMenuItemLabels.get(i).setMaxTextWidth(mLabelMaxWidth);
+        }
+    }
+
     /**
      * Only usefully in Line pattern - sets the gap between menu items.
      */
     public void setmItemGap(int mItemGap) {
-        this.mItemGap = mItemGap;
+        mLayoutEngine.setItemGap(mItemGap);
+        mItemsChanged = true;
+        requestLayout();
+    }
+
+    /**
+     * Restricts the background scrim to the given bounds (in the coordinates of this view), so only
+     * that region is dimmed and invalidated while it fades. Pass null to dim the whole view (default), or
+     * the whole window when the menu wraps its content.
+     */
+    public void setScrimBounds(Rect bounds) {
+        getScrim().setBounds(bounds);
+        invalidate();
+        if (mScrimLayer != null) {
+            mScrimLayer.invalidate();
+        }
+    }
+
+    /**
+     * Emit android.os.Trace sections (API 18+) around the measure and layout passes, the start of the
+     * open/close transitions and each animation frame of all menus, for systrace/Perfetto captures.
+     * Default false. Has no effect when the library was built with its TRACING build config field false.
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        MenuTrace.setEnabled(enabled);
+    }
+
+    /**
+     * Sets the memory budget, in bytes, of the drawable cache shared by all menus (default 1 MB). It holds
+     * the label background and the icons loaded with {@link #getCachedDrawable(Context, int)}, and is
+     * cleared by this call. Size it with {@link #getDrawableCacheHitCount()} and
+     * {@link #getDrawableCacheMissCount()}.
+     */
+    public static void setDrawableCacheSize(int maxBytes) {
+        MenuDrawablePool.setMaxSize(maxBytes);
+    }
+
+    /**
+     * Returns a new Drawable of the given resource, e.g. an item icon to set in
+     * {@link MenuAdapter#onBindItem}. The resource is only resolved or decoded once per configuration, all
+     * Drawables of it share their constant state through the drawable cache of the menus. On API 21+ the
+     * Drawable gets the theme of the given context.
+     */
+    public static Drawable getCachedDrawable(Context context, @DrawableRes int id) {
+        return MenuDrawablePool.get(context, id);
+    }
+
+    /**
+     * The number of drawables served from the drawable cache since its size was set.
+     */
+    public static int getDrawableCacheHitCount() {
+        return MenuDrawablePool.hitCount();
+    }
+
+    /**
+     * The number of drawables that had to be resolved since the size of the drawable cache was set.
+     */
+    public static int getDrawableCacheMissCount() {
+        return MenuDrawablePool.missCount();
+    }
+
+    /**
+     * The estimated memory of the cached drawables, in bytes.
+     */
+    public static int getDrawableCacheSize() {
+        return MenuDrawablePool.size();
     }
 
     //-- Misc/Helper methods --//
 
+    private GestureDetector getGestureDetector() {
+        if (mGestureDetector == null) {
+            mGestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+
+                @Override
+                public boolean onDown(MotionEvent e) {
+                    return mIsSetClosedOnTouchOutside && isOpened();
+                }
+
+                @Override
+                public boolean onSingleTapUp(MotionEvent e) {
+                    close();
+                    return true;
+                }
+            });
+        }
+        return mGestureDetector;
+    }
+
+    private MenuScrim getScrim() {
+        if (mScrim == null) {
+            mScrim = new MenuScrim();
+        }
+        return mScrim;
+    }
+
+    /**
+     * Updates the scrim fade and invalidates it only if the drawn alpha changed.
+     * @return True if the scrim was invalidated.
+     */
+    private boolean setScrimProgress(float progress) {
+        if (mScrim != null && mScrim.setProgress(progress)) {
+            mScrim.invalidate(this);
+            if (mScrimLayer != null) {
+                mScrimLayer.onScrimChanged(this);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the scrim the MenuScrimLayer draws over the rest of the window, or null if there is none:
+     * when it is hidden, has custom bounds or the menu covers the window by itself.
+     */
+    MenuScrim getWindowScrim() {
+        if (mScrim == null || mScrim.getAlpha() == 0 || mScrim.hasBounds()) {
+            return null;
+        }
+        View root = getRootView();
+        if (getWidth() >= root.getWidth() && getHeight() >= root.getHeight()) {
+            return null;
+        }
+        return mScrim;
+    }
+
+    /**
+     * Whether or not a touch outside of the menu closes it, the MenuScrimLayer handles those touches.
+     */
+    boolean isClosedOnTouchOutside() {
+        return mIsSetClosedOnTouchOutside;
+    }
+
+    /**
+     * Copies the measured sizes of the menu items and their labels into the layout engine.
+     * @return The number of menu items.
+     */
+    private int fillItemSizes() {
+        final int count = mMenuItems.size();
+        final int[] sizes = mLayoutEngine.ensureCapacity(count);
+        final boolean labels = needsLabels();
+        for (int i = 0; i < count; i++) {
+            int s = i * MenuLayoutEngine.SIZE_STRIDE;
+            FloatingActionButton item = mMenuItems.get(i);
+            sizes[s + MenuLayoutEngine.ITEM_WIDTH] = item.getMeasuredWidth();
+            sizes[s + MenuLayoutEngine.ITEM_HEIGHT] = item.getMeasuredHeight();
+            if (!labels) {
+                // The labels may not exist yet.
+                sizes[s + MenuLayoutEngine.LABEL_WIDTH] = 0;
+                sizes[s + MenuLayoutEngine.LABEL_HEIGHT] = 0;
+            } else {
+                MenuLabel label = mMenuItemLabels.get(i);
+                sizes[s + MenuLayoutEngine.LABEL_WIDTH] = label.getMeasuredWidth();
+                sizes[s + MenuLayoutEngine.LABEL_HEIGHT] = label.getMeasuredHeight();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determines whether or not the labels take part in measure and layout: only in the line pattern,
+     * once they were created.
+     */
+    private boolean needsLabels() {
+        return mLabelsCreated && !mLayoutEngine.isCircle();
+    }
+
+    /**
+     * Lays out a child at the rect stored at the given offset of a MenuLayoutEngine position buffer.
+     */
+    private static void layoutChild(View child, int[] positions, int offset) {
+        child.layout(positions[offset + MenuLayoutEngine.LEFT], positions[offset + MenuLayoutEngine.TOP],
+                positions[offset + MenuLayoutEngine.RIGHT], positions[offset + MenuLayoutEngine.BOTTOM]);
+    }
+
     protected void d(String msg) {
         Log.d("FAM", msg == null ? null : msg);
     }
@@ -678,6 +2159,65 @@ public class FloatingActionMenu extends ViewGroup {
         void onMenuToggle(boolean opened);
     }
 
+    /**
+     * Interface that receives performance metrics of the FloatingActionMenu. All times are in nanoseconds.
+     */
+    public interface OnMenuMetricsListener {
+        /**
+         * The first frame of an open/close transition was applied.
+         * @param latencyNanos Time from the open()/close() request (e.g. the tap) to that frame.
+         */
+        void onTransitionFirstFrame(boolean opening, long latencyNanos);
+
+        /**
+         * A frame of an open/close transition was applied.
+         * @param frameTimeNanos Time since the previous frame.
+         */
+        void onTransitionFrame(boolean opening, long frameTimeNanos);
+
+        /**
+         * An open/close transition ended.
+         * @param durationNanos Time from the request to the end of the transition.
+         * @param frames The number of frames applied.
+         * @param droppedFrames The number of frames missed according to the display refresh rate.
+         * @param completed False if the transition was interrupted by another one.
+         */
+        void onTransitionEnd(boolean opening, long durationNanos, int frames, int droppedFrames, boolean completed);
+
+        /**
+         * A measure pass of the menu finished.
+         * @param count The number of measure passes since the listener was installed.
+         */
+        void onMeasurePass(int count, long durationNanos);
+
+        /**
+         * A layout pass of the menu finished.
+         * @param count The number of layout passes since the listener was installed.
+         */
+        void onLayoutPass(int count, long durationNanos);
+    }
+
+    /**
+     * Interface that receives the area the menu invalidates on each animation frame of drawn items, for
+     * debugging. Under hardware acceleration on API 21+ the framework redraws the whole menu regardless.
+     */
+    public interface OnMenuInvalidateListener {
+        /**
+         * An animation frame changed the drawn items and the menu invalidated the given area.
+         * @param dirty The area changed by the frame, in the coordinates of the menu: the previous and next
+         *              bounds of the moving items, the rotating menu button and icon, the labels being hidden
+         *              and the scrim if its alpha changed. Never empty. Only valid during the call.
+         */
+        void onMenuInvalidate(FloatingActionMenu fam, Rect dirty);
+    }
+
+    /**
+     * Interface that receives a MenuSpec prepared in the background, on the UI thread.
+     */
+    public interface OnMenuPreparedListener {
+        void onMenuPrepared(MenuSpec.PreparedMenu menu);
+    }
+
     /**
      * Interface that handles the click action of a MenuItem.
      */
@@ -686,70 +2226,213 @@ public class FloatingActionMenu extends ViewGroup {
     }
 
     /**
-     * Animator that controls the open/close animation of menu items.
+     * Interface that learns about a click on a MenuItem as soon as the item is touched, e.g. to start
+     * loading what the click will open while the finger is still down. Every press is followed by either
+     * the click, reported to the OnMenuItemClickListener, or a cancel.
      */
-    private class ItemAnimator implements Animator.AnimatorListener {
-        private View mView;
-        private boolean playingOpenAnimator;
+    public interface OnMenuItemPressListener {
+        /**
+         * The item was touched and will be clicked if the finger is lifted over it.
+         */
+        void onMenuItemPress(FloatingActionMenu fam, int index, FloatingActionButton item);
+
+        /**
+         * The press on the item was abandoned: the finger left it, the gesture was cancelled or the menu
+         * closed or changed its items.
+         */
+        void onMenuItemPressCancel(FloatingActionMenu fam, int index, FloatingActionButton item);
+    }
 
-        public ItemAnimator(View v) {
-            v.animate().setListener(this);
-            mView = v;
-        }
+    /**
+     * Scrubs the menu with setProgress() while the menu button is dragged towards the items, and settles it
+     * on release. Touches that do not move past the touch slop are left to the button, so it still clicks.
+     */
+    private class DragHandler implements OnTouchListener {
+        private final int mTouchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+        private VelocityTracker mVelocityTracker;
+        private float mDownX;
+        private float mDownY;
+        private float mStartProgress;
+        private boolean mDragging;
+
+        /**
+         * Unit vector from the menu button towards the open items, and the distance they travel along it.
+         */
+        private float mDirectionX;
+        private float mDirectionY;
+        private float mDistance;
 
-        public void startOpenAnimator() {
-            mView.animate().cancel();
-            playingOpenAnimator = true;
-            mView.animate()
-                    .translationY(0)
-                    .translationX(0)
-                    .setInterpolator(DEFAULT_OPEN_INTERPOLATOR)
-                    .start();
-            mMenuButton.animate()
-                    .rotation(135f)
-                    .setInterpolator(DEFAULT_OPEN_INTERPOLATOR)
-                    .start();
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            // Use raw coordinates, the button itself moves with the progress.
+            final float x = event.getRawX();
+            final float y = event.getRawY();
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    mDownX = x;
+                    mDownY = y;
+                    mDragging = false;
+                    mVelocityTracker = VelocityTracker.obtain();
+                    mVelocityTracker.addMovement(event);
+                    return false;
+                case MotionEvent.ACTION_MOVE:
+                    if (mVelocityTracker == null) {
+                        return false;
+                    }
+                    mVelocityTracker.addMovement(event);
+                    if (!mDragging) {
+                        if (Math.abs(x - mDownX) < mTouchSlop && Math.abs(y - mDownY) < mTouchSlop) {
+                            return false;
+                        }
+                        startDrag(event);
+                    }
+                    setProgress(mStartProgress + project(x - mDownX, y - mDownY));
+                    return true;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    if (mVelocityTracker == null) {
+                        return false;
+                    }
+                    boolean dragging = mDragging;
+                    if (dragging) {
+                        mVelocityTracker.addMovement(event);
+                        mVelocityTracker.computeCurrentVelocity(1000);
+                        settleProgress(project(mVelocityTracker.getXVelocity(), mVelocityTracker.getYVelocity()));
+                    }
+                    mVelocityTracker.recycle();
+                    mVelocityTracker = null;
+                    mDragging = false;
+                    return dragging;
+                default:
+                    return mDragging;
+            }
         }
 
-        public void startCloseAnimator() {
-            mView.animate().cancel();
-            playingOpenAnimator = false;
-            mView.animate()
-                    .translationX(mMenuButton.getLeft() - mView.getLeft())
-                    .translationY((mMenuButton.getTop() - mView.getTop()))
-                    .setInterpolator(DEFAULT_CLOSE_INTERPOLATOR)
-                    .start();
-            mMenuButton.animate()
-                    .rotation(0f)
-                    .setInterpolator(DEFAULT_CLOSE_INTERPOLATOR)
-                    .start();
+        /**
+         * Drops the gesture in progress, if any, without settling the menu.
+         */
+        void cancel() {
+            if (mVelocityTracker != null) {
+                mVelocityTracker.recycle();
+                mVelocityTracker = null;
+            }
+            mDragging = false;
         }
 
-        @Override
-        public void onAnimationStart(Animator animation) {
-            if (playingOpenAnimator) {
-                mView.setVisibility(VISIBLE);
+        private void startDrag(MotionEvent event) {
+            mDragging = true;
+            mStartProgress = getProgress();
+            getParent().requestDisallowInterceptTouchEvent(true);
+
+            // Drag along the average direction of the open items.
+            float sumX = 0;
+            float sumY = 0;
+            final int count = mMenuItems.size();
+            for (int i = 0; i < count; i++) {
+                FloatingActionButton item = mMenuItems.get(i);
+                sumX += item.getLeft() - mMenuButton.getLeft();
+                sumY += item.getTop() - mMenuButton.getTop();
+            }
+            float length = (float) Math.sqrt(sumX * sumX + sumY * sumY);
+            if (length > 0) {
+                mDirectionX = sumX / length;
+                mDirectionY = sumY / length;
+                mDistance = length / count;
             } else {
-                ((TextView) mView.getTag()).setVisibility(GONE);
+                mDirectionX = 0;
+                mDirectionY = -1;
+                mDistance = mMenuButton.getHeight() * 3;
             }
+
+            // The button will not see the rest of the gesture, release its pressed state and click.
+            MotionEvent cancel = MotionEvent.obtain(event);
+            cancel.setAction(MotionEvent.ACTION_CANCEL);
+            mMenuButton.onTouchEvent(cancel);
+            cancel.recycle();
+        }
+
+        /**
+         * Converts a movement in pixels to a change of progress.
+         */
+        private float project(float dx, float dy) {
+            return mDistance > 0 ? (dx * mDirectionX + dy * mDirectionY) / mDistance : 0;
         }
+    }
+
+    /**
+     * Reports presses on menu items and labels that are child views. The views handle the touch themselves,
+     * this only watches it: the press is reported on the down event and cancelled once the gesture can no
+     * longer click the view.
+     */
+    private class ItemPressHandler implements OnTouchListener {
+        private final int mTouchSlop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
 
         @Override
-        public void onAnimationEnd(Animator animation) {
-            if (!playingOpenAnimator) {
-                mView.setVisibility(GONE);
-            } else {
-                ((TextView) mView.getTag()).setVisibility(VISIBLE);
+        public boolean onTouch(View v, MotionEvent event) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    // Menu items and their labels are tagged with their index when laid out.
+                    Object index = v.getTag(R.id.fam_item_index);
+                    if (mOpen && index instanceof Integer) {
+                        dispatchItemPress((Integer) index);
+                    }
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    // A view drops its pressed state, and its click, once the touch leaves it by the slop.
+                    if (!isInside(v, event)) {
+                        cancelItemPress();
+                    }
+                    break;
+                case MotionEvent.ACTION_UP:
+                    // The click, posted by the view, completes the press.
+                    if (!v.isEnabled() || !v.isClickable() || !isInside(v, event)) {
+                        cancelItemPress();
+                    }
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    cancelItemPress();
+                    break;
             }
+            return false;
         }
 
+        private boolean isInside(View v, MotionEvent event) {
+            final float x = event.getX();
+            final float y = event.getY();
+            return x >= -mTouchSlop && y >= -mTouchSlop
+                    && x < v.getWidth() + mTouchSlop && y < v.getHeight() + mTouchSlop;
+        }
+    }
+
+    /**
+     * Listener of the animation clock, computes and applies every frame and toggles the
+     * visibility of the items and labels when the animation starts and ends.
+     */
+    private class MenuAnimatorListener extends AnimatorListenerAdapter
+            implements ValueAnimator.AnimatorUpdateListener {
+
         @Override
-        public void onAnimationCancel(Animator animation) {
+        public void onAnimationUpdate(ValueAnimator animation) {
+            mAnimationEngine.apply(animation.getAnimatedFraction());
+            applyAnimationFrame();
+        }
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            mAnimationCancelled = false;
+            onAnimationStarted(mAnimatingOpen);
+        }
 
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (!mAnimationCancelled) {
+                onAnimationFinished(mAnimatingOpen);
+            }
         }
 
         @Override
-        public void onAnimationRepeat(Animator animation) {
+        public void onAnimationCancel(Animator animation) {
+            mAnimationCancelled = true;
         }
     }
 }
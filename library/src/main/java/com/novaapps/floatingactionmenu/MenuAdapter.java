@@ -0,0 +1,80 @@
+package com.novaapps.floatingactionmenu;
+
+import android.support.design.widget.FloatingActionButton;
+
+/**
+ * Provides the items of a FloatingActionMenu, in the manner of a RecyclerView adapter.
+ *
+ * The menu creates item buttons (and their labels) only when it has none to reuse, and binds the data of
+ * a position to them with {@link #onBindItem}. The label of an item shows its content description. Changes
+ * are reported with the notify methods, they are batched and applied together in the next layout pass.
+ */
+public abstract class MenuAdapter {
+
+    /**
+     * The menu this adapter is attached to, if any.
+     */
+    private FloatingActionMenu mMenu;
+
+    /**
+     * Returns the number of items in the menu.
+     */
+    public abstract int getItemCount();
+
+    /**
+     * Binds the data of the given position to an item, which may have shown another position before.
+     * Set its content description to give it a label.
+     */
+    public abstract void onBindItem(FloatingActionButton item, int position);
+
+    /**
+     * Creates a new item button, called only when there is no recycled item to reuse.
+     */
+    public FloatingActionButton onCreateItem(FloatingActionMenu menu) {
+        return new FloatingActionButton(menu.getContext());
+    }
+
+    //-- Notifications --//
+
+    public final void notifyDataSetChanged() {
+        notify(MenuUpdateQueue.RESET, 0, 0);
+    }
+
+    public final void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    public final void notifyItemRangeChanged(int positionStart, int itemCount) {
+        notify(MenuUpdateQueue.CHANGE, positionStart, itemCount);
+    }
+
+    public final void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    public final void notifyItemRangeInserted(int positionStart, int itemCount) {
+        notify(MenuUpdateQueue.INSERT, positionStart, itemCount);
+    }
+
+    public final void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    public final void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        notify(MenuUpdateQueue.REMOVE, positionStart, itemCount);
+    }
+
+    public final void notifyItemMoved(int fromPosition, int toPosition) {
+        notify(MenuUpdateQueue.MOVE, fromPosition, toPosition);
+    }
+
+    private void notify(int op, int first, int second) {
+        if (mMenu != null) {
+            mMenu.onAdapterUpdate(op, first, second);
+        }
+    }
+
+    void setMenu(FloatingActionMenu menu) {
+        mMenu = menu;
+    }
+}
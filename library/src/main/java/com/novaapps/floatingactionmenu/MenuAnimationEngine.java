@@ -0,0 +1,147 @@
+package com.novaapps.floatingactionmenu;
+
+/**
+ * Platform-independent animation state for the FloatingActionMenu.
+ *
+ * A single animation clock feeds {@link #apply(float)} with the (already interpolated) fraction of the
+ * running animation, and the engine computes the translation of every item, the rotation of the menu
+ * icon and the alpha of the scrim from start/delta tables prepared once when the animation starts.
+ * A frame only reads and writes primitive arrays, so it allocates nothing and its cost is a single
+ * linear pass over the items.
+ */
+final class MenuAnimationEngine {
+
+    //-- Properties --//
+
+    /**
+     * Translations of the items when the animation started.
+     */
+    private float[] mFromX = new float[0];
+    private float[] mFromY = new float[0];
+
+    /**
+     * Distance each item travels during the animation.
+     */
+    private float[] mDeltaX = new float[0];
+    private float[] mDeltaY = new float[0];
+
+    /**
+     * Translations of the items computed by the last frame.
+     */
+    private float[] mX = new float[0];
+    private float[] mY = new float[0];
+
+    /**
+     * The number of items taking part in the animation.
+     */
+    private int mCount;
+
+    private float mFromRotation;
+    private float mDeltaRotation;
+    private float mRotation;
+
+    private float mFromAlpha;
+    private float mDeltaAlpha;
+    private float mAlpha;
+
+    //-- Preparation --//
+
+    /**
+     * Prepares the tables for the given number of items. Tables only grow, so preparing a new
+     * animation for the same menu allocates nothing.
+     */
+    void prepare(int count) {
+        if (mFromX.length < count) {
+            mFromX = new float[count];
+            mFromY = new float[count];
+            mDeltaX = new float[count];
+            mDeltaY = new float[count];
+            mX = new float[count];
+            mY = new float[count];
+        }
+        mCount = count;
+    }
+
+    /**
+     * Sets the start and end translation of the item at the given index.
+     */
+    void setItem(int index, float fromX, float fromY, float toX, float toY) {
+        mFromX[index] = fromX;
+        mFromY[index] = fromY;
+        mDeltaX[index] = toX - fromX;
+        mDeltaY[index] = toY - fromY;
+        mX[index] = fromX;
+        mY[index] = fromY;
+    }
+
+    /**
+     * Sets the start and end rotation of the menu icon, in degrees.
+     */
+    void setRotation(float from, float to) {
+        mFromRotation = from;
+        mDeltaRotation = to - from;
+        mRotation = from;
+    }
+
+    /**
+     * Sets the start and end alpha of the scrim, from 0 (transparent) to 1 (opaque).
+     */
+    void setAlpha(float from, float to) {
+        mFromAlpha = from;
+        mDeltaAlpha = to - from;
+        mAlpha = from;
+    }
+
+    //-- Frame --//
+
+    /**
+     * Computes one frame of the animation.
+     *
+     * @param fraction The interpolated fraction of the animation. It may leave [0, 1] for overshooting
+     *                 interpolators; translations and rotation follow it, the alpha is clamped.
+     */
+    void apply(float fraction) {
+        final int count = mCount;
+        final float[] fromX = mFromX;
+        final float[] fromY = mFromY;
+        final float[] deltaX = mDeltaX;
+        final float[] deltaY = mDeltaY;
+        final float[] x = mX;
+        final float[] y = mY;
+        for (int i = 0; i < count; i++) {
+            x[i] = fromX[i] + deltaX[i] * fraction;
+            y[i] = fromY[i] + deltaY[i] * fraction;
+        }
+        mRotation = mFromRotation + mDeltaRotation * fraction;
+        float alpha = mFromAlpha + mDeltaAlpha * fraction;
+        mAlpha = alpha < 0f ? 0f : alpha > 1f ? 1f : alpha;
+    }
+
+    //-- Accessors --//
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Horizontal translation of the item at the given index, as of the last frame.
+     */
+    float getTranslationX(int index) {
+        return mX[index];
+    }
+
+    /**
+     * Vertical translation of the item at the given index, as of the last frame.
+     */
+    float getTranslationY(int index) {
+        return mY[index];
+    }
+
+    float getRotation() {
+        return mRotation;
+    }
+
+    float getAlpha() {
+        return mAlpha;
+    }
+}
@@ -0,0 +1,135 @@
+package com.novaapps.floatingactionmenu;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.LruCache;
+
+/**
+ * Drawables shared by all menus of the process.
+ *
+ * Resources (the label background, and item icons loaded through
+ * {@link FloatingActionMenu#getCachedDrawable(android.content.Context, int)}) are resolved once and kept
+ * as their constant state in an LruCache, bounded by an estimate of their memory. Every user then gets
+ * its own Drawable created from the shared state, so creating a label or binding an icon (e.g. for a menu
+ * in a RecyclerView row) neither inflates XML nor decodes a bitmap again.
+ *
+ * The states are resolved without a theme and each Drawable gets the theme of the context asking for it
+ * (API 21+), like the framework's own drawable cache. They depend on the resource configuration, so the
+ * cache is dropped when it is asked for a drawable of another configuration.
+ */
+final class MenuDrawablePool {
+
+    /**
+     * Default memory budget of the cache, in bytes.
+     */
+    static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    /**
+     * Constant states by density (high 32 bits) and resource id (low 32 bits). Read from any thread, e.g.
+     * by {@link MenuSpec#prepare(Context)}, and only replaced while holding the class lock.
+     */
+    private static volatile LruCache<Long, Drawable.ConstantState> sCache = newCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * The resource configuration of the cached states.
+     */
+    private static Configuration sConfiguration;
+
+    private MenuDrawablePool() {
+    }
+
+    /**
+     * Returns a new Drawable of the given resource, themed for the given context, sharing its constant
+     * state with every other user.
+     */
+    @SuppressWarnings("deprecation")
+    static Drawable get(Context context, int id) {
+        final Resources resources = context.getResources();
+        final LruCache<Long, Drawable.ConstantState> cache = cacheFor(resources.getConfiguration());
+        final Long key = ((long) resources.getDisplayMetrics().densityDpi << 32) | (id & 0xffffffffL);
+        Drawable.ConstantState state = cache.get(key);
+        if (state == null) {
+            Drawable drawable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                    ? resources.getDrawable(id, null) : resources.getDrawable(id);
+            state = drawable.getConstantState();
+            if (state == null) {
+                // Cannot be shared, hand out the drawable itself.
+                return drawable;
+            }
+            cache.put(key, state);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return state.newDrawable(resources, context.getTheme());
+        }
+        return state.newDrawable(resources);
+    }
+
+    /**
+     * Returns a new label background sharing its constant state with every other label.
+     */
+    static Drawable newLabelBackground(Context context) {
+        return get(context, R.drawable.rounded_corners);
+    }
+
+    /**
+     * Sets the memory budget of the cache, in bytes. The cached drawables are dropped.
+     */
+    static synchronized void setMaxSize(int maxSize) {
+        sCache = newCache(maxSize);
+    }
+
+    /**
+     * Returns the cache of the given resource configuration, dropping the cached states if they were
+     * resolved for another one, e.g. before a locale or night mode change.
+     */
+    private static synchronized LruCache<Long, Drawable.ConstantState> cacheFor(Configuration configuration) {
+        if (!configuration.equals(sConfiguration)) {
+            sCache.evictAll();
+            sConfiguration = new Configuration(configuration);
+        }
+        return sCache;
+    }
+
+    static int hitCount() {
+        return sCache.hitCount();
+    }
+
+    static int missCount() {
+        return sCache.missCount();
+    }
+
+    /**
+     * Estimated memory of the cached drawables, in bytes.
+     */
+    static int size() {
+        return sCache.size();
+    }
+
+    private static LruCache<Long, Drawable.ConstantState> newCache(int maxSize) {
+        return new LruCache<Long, Drawable.ConstantState>(maxSize) {
+            @Override
+            protected int sizeOf(Long key, Drawable.ConstantState state) {
+                return estimateSize(state.newDrawable());
+            }
+        };
+    }
+
+    /**
+     * Estimates the memory of a drawable: its bitmap if it has one, an ARGB raster of its intrinsic size
+     * otherwise.
+     */
+    private static int estimateSize(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        return Math.max(1, drawable.getIntrinsicWidth()) * Math.max(1, drawable.getIntrinsicHeight()) * 4;
+    }
+}
@@ -0,0 +1,113 @@
+package com.novaapps.floatingactionmenu;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.design.widget.FloatingActionButton;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Draws the menu items and their labels directly on the FloatingActionMenu canvas.
+ *
+ * In this mode the item FloatingActionButtons and MenuLabels are not children of the menu, they
+ * only hold the state of the items (bounds, translation, visibility, drawables and text) that the
+ * layout and animation code already maintains. Items are drawn from their background and icon
+ * drawables, labels from their laid out text.
+ */
+final class MenuItemRenderer {
+
+    /**
+     * The background drawn behind every label, shared by all labels since they are drawn one at a time.
+     */
+    private final Drawable mLabelBackground;
+
+    MenuItemRenderer(Context context) {
+        mLabelBackground = MenuDrawablePool.newLabelBackground(context);
+    }
+
+    //-- Drawing --//
+
+    /**
+     * Draws the visible items and, if requested, their labels.
+     *
+     * @param positions The position buffer of the MenuLayoutEngine, for the label rects.
+     */
+    void draw(Canvas canvas, ArrayList<FloatingActionButton> items, ArrayList<MenuLabel> labels,
+              int[] positions, boolean drawLabels) {
+        for (int i = 0; i < items.size(); i++) {
+            if (drawLabels) {
+                MenuLabel label = labels.get(i);
+                if (label.getVisibility() == View.VISIBLE) {
+                    drawLabel(canvas, label, positions, MenuLayoutEngine.itemOffset(i) + MenuLayoutEngine.LABEL);
+                }
+            }
+            FloatingActionButton item = items.get(i);
+            if (item.getVisibility() == FloatingActionButton.VISIBLE) {
+                drawItem(canvas, item);
+            }
+        }
+    }
+
+    private void drawItem(Canvas canvas, FloatingActionButton item) {
+        final int width = item.getWidth();
+        final int height = item.getHeight();
+        final int save = canvas.save();
+        canvas.translate(item.getLeft() + item.getTranslationX(), item.getTop() + item.getTranslationY());
+        Drawable background = item.getBackground();
+        if (background != null) {
+            background.setBounds(0, 0, width, height);
+            background.draw(canvas);
+        }
+        Drawable icon = item.getDrawable();
+        if (icon != null) {
+            int iconWidth = icon.getIntrinsicWidth();
+            int iconHeight = icon.getIntrinsicHeight();
+            int left = (width - iconWidth) / 2;
+            int top = (height - iconHeight) / 2;
+            icon.setBounds(left, top, left + iconWidth, top + iconHeight);
+            icon.draw(canvas);
+        }
+        canvas.restoreToCount(save);
+    }
+
+    private void drawLabel(Canvas canvas, MenuLabel label, int[] positions, int offset) {
+        final int left = positions[offset + MenuLayoutEngine.LEFT];
+        final int top = positions[offset + MenuLayoutEngine.TOP];
+        mLabelBackground.setBounds(left, top,
+                positions[offset + MenuLayoutEngine.RIGHT], positions[offset + MenuLayoutEngine.BOTTOM]);
+        mLabelBackground.draw(canvas);
+        label.drawText(canvas, left + label.getPaddingLeft(), top + label.getPaddingTop());
+    }
+
+    //-- Hit testing --//
+
+    /**
+     * Finds the visible item, or label, under the given point.
+     *
+     * @return The index of the item, or -1 if there is none.
+     */
+    int hitTest(float x, float y, ArrayList<FloatingActionButton> items, ArrayList<MenuLabel> labels,
+                int[] positions, boolean testLabels) {
+        // Walk backwards, the last item is drawn on top.
+        for (int i = items.size() - 1; i >= 0; i--) {
+            FloatingActionButton item = items.get(i);
+            if (item.getVisibility() == FloatingActionButton.VISIBLE) {
+                float left = item.getLeft() + item.getTranslationX();
+                float top = item.getTop() + item.getTranslationY();
+                if (x >= left && x < left + item.getWidth() && y >= top && y < top + item.getHeight()) {
+                    return i;
+                }
+            }
+            if (testLabels && labels.get(i).getVisibility() == View.VISIBLE) {
+                int p = MenuLayoutEngine.itemOffset(i) + MenuLayoutEngine.LABEL;
+                if (x >= positions[p + MenuLayoutEngine.LEFT] && x < positions[p + MenuLayoutEngine.RIGHT]
+                        && y >= positions[p + MenuLayoutEngine.TOP] && y < positions[p + MenuLayoutEngine.BOTTOM]) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
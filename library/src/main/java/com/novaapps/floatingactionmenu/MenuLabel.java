@@ -0,0 +1,152 @@
+package com.novaapps.floatingactionmenu;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * The label next to a menu item: a single line of text on the rounded label background.
+ *
+ * Unlike a TextView, the label measures its text once into a {@link MenuLabelText}, and lays it out again
+ * only when the width available to it changes, measure and draw reuse that layout. A width limit, from
+ * the max width of the label or the MeasureSpec, ellipsizes the text at its end. The text can be measured
+ * on a background thread, see {@link MenuSpec}.
+ */
+@SuppressLint("ViewConstructor")
+final class MenuLabel extends View {
+
+    /**
+     * Text size of the labels, in sp, if the theme does not define one.
+     */
+    private static final float DEFAULT_TEXT_SIZE = 14f;
+
+    private final TextPaint mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+    private CharSequence mText = "";
+
+    /**
+     * The measured text, null until first measured after the text changed.
+     */
+    private MenuLabelText mTextLayout;
+
+    /**
+     * The widest the text may be, it is ellipsized beyond.
+     */
+    private int mMaxTextWidth = Integer.MAX_VALUE;
+
+    /**
+     * The text as laid out by the last measure.
+     */
+    private Layout mLayout;
+
+    MenuLabel(Context context) {
+        super(context);
+        mPaint.density = context.getResources().getDisplayMetrics().density;
+        mPaint.setTextSize(resolveTextSize(context));
+        mPaint.setColor(Color.WHITE);
+    }
+
+    /**
+     * Returns the text size of the theme's small text appearance, the one a TextView uses by default.
+     */
+    private static float resolveTextSize(Context context) {
+        TypedValue appearance = new TypedValue();
+        if (context.getTheme().resolveAttribute(android.R.attr.textAppearanceSmall, appearance, true)) {
+            TypedArray a = context.obtainStyledAttributes(appearance.resourceId, new int[]{android.R.attr.textSize});
+            try {
+                if (a.hasValue(0)) {
+                    return a.getDimension(0, 0f);
+                }
+            } finally {
+                a.recycle();
+            }
+        }
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE,
+                context.getResources().getDisplayMetrics());
+    }
+
+    //-- Mutators --//
+
+    void setText(CharSequence text) {
+        if (TextUtils.equals(text, mText)) {
+            return;
+        }
+        mText = text == null ? "" : text;
+        mTextLayout = null;
+        setContentDescription(text);
+        requestLayout();
+        invalidate();
+    }
+
+    CharSequence getText() {
+        return mText;
+    }
+
+    float getTextSize() {
+        return mPaint.getTextSize();
+    }
+
+    /**
+     * Limits the width of the text, in pixels, it is ellipsized beyond.
+     */
+    void setMaxTextWidth(int maxTextWidth) {
+        if (maxTextWidth != mMaxTextWidth) {
+            mMaxTextWidth = maxTextWidth;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns the measured text, measuring it if it changed. Can be called on a background thread while the
+     * label is not attached.
+     */
+    MenuLabelText getTextLayout() {
+        if (mTextLayout == null) {
+            mTextLayout = MenuLabelText.compute(mText, mPaint);
+        }
+        return mTextLayout;
+    }
+
+    //-- Measure and draw --//
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int available = mMaxTextWidth;
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            available = Math.min(available, MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding);
+        }
+        mLayout = getTextLayout().getLayout(available);
+        int width = mLayout.getWidth() + horizontalPadding;
+        int height = mLayout.getHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        drawText(canvas, getPaddingLeft(), getPaddingTop());
+    }
+
+    /**
+     * Draws the text, as of the last measure, with its top left corner at the given point. The menu draws
+     * labels itself with this when it draws its items.
+     */
+    void drawText(Canvas canvas, float left, float top) {
+        if (mLayout == null) {
+            return;
+        }
+        final int save = canvas.save();
+        canvas.translate(left, top);
+        mLayout.draw(canvas);
+        canvas.restoreToCount(save);
+    }
+}
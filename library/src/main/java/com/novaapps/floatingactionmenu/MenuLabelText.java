@@ -0,0 +1,78 @@
+package com.novaapps.floatingactionmenu;
+
+import android.text.BoringLayout;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * The text of a label, measured once and laid out once per width.
+ *
+ * Labels are a single line. The text is measured as a whole, with kerning and ligatures, when it is set.
+ * Laying it out into a width ellipsizes it at its end with {@link TextUtils#ellipsize}, which puts the
+ * ellipsis on the correct side of right-to-left text, and the resulting Layout is kept until the width
+ * changes. Computing it does not touch any view, it can happen on any thread.
+ */
+final class MenuLabelText {
+
+    private final CharSequence mText;
+
+    private final TextPaint mPaint;
+
+    /**
+     * Width of the whole text, rounded up.
+     */
+    private final int mWidth;
+
+    /**
+     * The text laid out for mLayoutWidth, null until first needed.
+     */
+    private Layout mLayout;
+    private int mLayoutWidth;
+
+    private MenuLabelText(CharSequence text, TextPaint paint, int width) {
+        mText = text;
+        mPaint = paint;
+        mWidth = width;
+    }
+
+    /**
+     * Measures the text with the given paint, which must not change afterwards.
+     */
+    static MenuLabelText compute(CharSequence text, TextPaint paint) {
+        CharSequence nonNull = text == null ? "" : text;
+        return new MenuLabelText(nonNull, paint, (int) Math.ceil(Layout.getDesiredWidth(nonNull, paint)));
+    }
+
+    /**
+     * Width of the whole text.
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the text laid out on a single line no wider than the given width, ellipsized at its end if it
+     * does not fit. The layout is as wide as the text, or as the given width when it is ellipsized.
+     */
+    Layout getLayout(int maxWidth) {
+        final int width = Math.max(0, Math.min(maxWidth, mWidth));
+        if (mLayout == null || width != mLayoutWidth) {
+            CharSequence text = width < mWidth
+                    ? TextUtils.ellipsize(mText, mPaint, width, TextUtils.TruncateAt.END) : mText;
+            mLayout = newLayout(text, width);
+            mLayoutWidth = width;
+        }
+        return mLayout;
+    }
+
+    private Layout newLayout(CharSequence text, int width) {
+        // Left-to-right text without spans or tabs takes the cheap path.
+        BoringLayout.Metrics metrics = BoringLayout.isBoring(text, mPaint);
+        if (metrics != null) {
+            return BoringLayout.make(text, mPaint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, metrics, false);
+        }
+        return new StaticLayout(text, mPaint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+    }
+}
@@ -0,0 +1,599 @@
+package com.novaapps.floatingactionmenu;
+
+/**
+ * Platform-independent geometry for the FloatingActionMenu.
+ *
+ * The engine takes the measured size of the menu button and of every item/label pair and writes
+ * their layout rectangles into a reusable primitive buffer, so it can be run (and profiled) on a
+ * plain JVM. Buffers only grow when the item count exceeds their capacity, a layout pass allocates
+ * nothing.
+ *
+ * In the circle pattern the items are spread over an arc around the menu button, and overflow into
+ * concentric rings when they would overlap. The offsets of the items on the rings are computed once per
+ * configuration (item count, radius, arc, item size) and reused, a layout pass does no trigonometry.
+ */
+final class MenuLayoutEngine {
+
+    //-- Buffer layout --//
+
+    /**
+     * Number of ints describing one item in the size buffer: item width/height, label width/height.
+     */
+    static final int SIZE_STRIDE = 4;
+
+    static final int ITEM_WIDTH = 0;
+    static final int ITEM_HEIGHT = 1;
+    static final int LABEL_WIDTH = 2;
+    static final int LABEL_HEIGHT = 3;
+
+    /**
+     * Number of ints describing one item in the position buffer: the item rect followed by the label rect.
+     */
+    static final int POSITION_STRIDE = 8;
+
+    /**
+     * Offset of the label rect within an item's positions.
+     */
+    static final int LABEL = 4;
+
+    static final int LEFT = 0;
+    static final int TOP = 1;
+    static final int RIGHT = 2;
+    static final int BOTTOM = 3;
+
+    /**
+     * The menu button rect occupies the first four ints of the position buffer.
+     */
+    static final int BUTTON = 0;
+
+    /**
+     * Offset of the first item in the position buffer.
+     */
+    static final int ITEMS = 4;
+
+    /**
+     * Horizontal space between a label and its menu item in the line pattern.
+     */
+    static final int LABEL_OFFSET = 50;
+
+    //-- Properties --//
+
+    /**
+     * A flag representing whether or not the menu appearance is a circle (true) or linear menu (false).
+     */
+    private boolean mIsCircle;
+
+    /**
+     * The radius of the circular menu (if application).
+     */
+    private int mRadius = 256;
+
+    /**
+     * If the radius of the circle is a multiple of the FB width, this is what that ratio is.
+     */
+    private float mMultipleOfFB;
+
+    /**
+     * The gap between menu items.
+     */
+    private int mItemGap;
+
+    /**
+     * The angle, in degrees, of the first item around the menu button. 0 is left of it, 90 above it.
+     */
+    private float mStartAngle = 0f;
+
+    /**
+     * The angle, in degrees, the items are spread over, from the start angle.
+     */
+    private float mSweepAngle = 90f;
+
+    /**
+     * The distance between two rings, or 0 to use the item size plus the item gap.
+     */
+    private int mRingSpacing;
+
+    /**
+     * Offsets of the item centers from the menu button center in the circle pattern, positive towards
+     * the start of the arc (left) and up.
+     */
+    private int[] mOffsetX = new int[0];
+    private int[] mOffsetY = new int[0];
+
+    /**
+     * The configuration the offsets were computed for.
+     */
+    private boolean mOffsetsValid;
+    private int mOffsetsCount;
+    private int mOffsetsRadius;
+    private int mOffsetsItemSize;
+
+    private int mOffsetsSpacing;
+
+    /**
+     * The number of rings used by the offsets.
+     */
+    private int mRingCount;
+
+    /**
+     * Sector index of the rings, used to map a touch point to an item: the index of the first item on
+     * each ring, the number of items on it, the angle of its first item and the angle between its items.
+     */
+    private int[] mRingStart = new int[1];
+    private int[] mRingSize = new int[1];
+    private double[] mRingFirstAngle = new double[1];
+    private double[] mRingStep = new double[1];
+
+    /**
+     * A flag representing whether or not the arc is a full circle.
+     */
+    private boolean mFullCircle;
+
+    /**
+     * Measured sizes of the items and labels, SIZE_STRIDE ints per item.
+     */
+    private int[] mSizes = new int[0];
+
+    /**
+     * Output rectangles of the button, items and labels, see BUTTON, ITEMS and POSITION_STRIDE.
+     */
+    private int[] mPositions = new int[ITEMS];
+
+    /**
+     * The number of items described by the last layout.
+     */
+    private int mCount;
+
+    /**
+     * The corner the last layout was anchored to.
+     */
+    private int mRight;
+    private int mBottom;
+
+    /**
+     * Size of the open menu, computed by {@link #measure}.
+     */
+    private int mMeasuredWidth;
+    private int mMeasuredHeight;
+
+    /**
+     * How far the open menu reaches right of and below the menu button, e.g. for a full circle.
+     */
+    private int mOverhangRight;
+    private int mOverhangBottom;
+
+    //-- Layout --//
+
+    /**
+     * Makes sure the size buffer can describe the given number of items and returns it.
+     * The caller fills in SIZE_STRIDE ints per item before calling {@link #layout}.
+     */
+    int[] ensureCapacity(int count) {
+        if (mSizes.length < count * SIZE_STRIDE) {
+            mSizes = new int[count * SIZE_STRIDE];
+            mPositions = new int[ITEMS + count * POSITION_STRIDE];
+        }
+        return mSizes;
+    }
+
+    /**
+     * Computes the rectangles of the menu button and the first {@code count} items.
+     *
+     * @param right The right edge the menu is anchored to (padding already applied).
+     * @param bottom The bottom edge the menu is anchored to (padding already applied).
+     */
+    void layout(int right, int bottom, int buttonWidth, int buttonHeight, int count) {
+        ensureCapacity(count);
+        mCount = count;
+        mRight = right;
+        mBottom = bottom;
+        final int[] positions = mPositions;
+        int top = bottom - buttonHeight;
+        positions[BUTTON + LEFT] = right - buttonWidth;
+        positions[BUTTON + TOP] = top;
+        positions[BUTTON + RIGHT] = right;
+        positions[BUTTON + BOTTOM] = bottom;
+
+        if (mIsCircle) {
+            layoutCircle(right, bottom, buttonWidth, buttonHeight, count);
+        } else {
+            layoutLine(right, top, buttonWidth, count);
+        }
+    }
+
+    private void layoutCircle(int right, int bottom, int buttonWidth, int buttonHeight, int count) {
+        final int[] sizes = mSizes;
+        final int[] positions = mPositions;
+        int maxWidth = 0;
+        int itemSize = 0;
+        for (int i = 0; i < count; i++) {
+            int s = i * SIZE_STRIDE;
+            maxWidth = Math.max(maxWidth, sizes[s + ITEM_WIDTH]);
+            itemSize = Math.max(itemSize, Math.max(sizes[s + ITEM_WIDTH], sizes[s + ITEM_HEIGHT]));
+        }
+        if (0 != mMultipleOfFB) {
+            mRadius = (int) (maxWidth * mMultipleOfFB);
+        }
+        if (!mOffsetsValid || mOffsetsCount != count || mOffsetsRadius != mRadius || mOffsetsItemSize != itemSize) {
+            computeOffsets(count, itemSize);
+        }
+
+        final int[] offsetX = mOffsetX;
+        final int[] offsetY = mOffsetY;
+        for (int i = 0; i < count; i++) {
+            int s = i * SIZE_STRIDE;
+            int p = ITEMS + i * POSITION_STRIDE;
+            int fbWidth = sizes[s + ITEM_WIDTH];
+            int fbHeight = sizes[s + ITEM_HEIGHT];
+            int itemDw = (buttonWidth - fbWidth) / 2;
+            int itemDh = (buttonHeight - fbHeight) / 2;
+            int itemX = offsetX[i];
+            int itemY = offsetY[i];
+            positions[p + LEFT] = right - itemX - fbWidth - itemDw;
+            positions[p + TOP] = bottom - itemY - fbHeight - itemDh;
+            positions[p + RIGHT] = right - itemX - itemDw;
+            positions[p + BOTTOM] = bottom - itemY - itemDh;
+
+            // Labels are not shown in the circle pattern.
+            positions[p + LABEL + LEFT] = 0;
+            positions[p + LABEL + TOP] = 0;
+            positions[p + LABEL + RIGHT] = 0;
+            positions[p + LABEL + BOTTOM] = 0;
+        }
+    }
+
+    /**
+     * Spreads the items over the arc, filling each ring with as many items as fit without overlapping
+     * before moving on to the next, larger, ring.
+     */
+    private void computeOffsets(int count, int itemSize) {
+        if (mOffsetX.length < count) {
+            mOffsetX = new int[count];
+            mOffsetY = new int[count];
+        }
+        final double start = Math.toRadians(mStartAngle);
+        final double sweep = Math.toRadians(mSweepAngle);
+        final boolean fullCircle = Math.abs(mSweepAngle) >= 360f;
+        final int spacing = mRingSpacing > 0 ? mRingSpacing : itemSize + mItemGap;
+
+        int placed = 0;
+        int ring = 0;
+        while (placed < count) {
+            int radius = mRadius + ring * spacing;
+            int n = Math.min(ringCapacity(radius, sweep, itemSize, fullCircle), count - placed);
+            double first = start;
+            double step = 0;
+            if (n == 1) {
+                if (!fullCircle) {
+                    first += sweep / 2;
+                }
+            } else {
+                step = sweep / (fullCircle ? n : n - 1);
+            }
+            for (int j = 0; j < n; j++) {
+                double angle = first + j * step;
+                mOffsetX[placed + j] = (int) (radius * Math.cos(angle));
+                mOffsetY[placed + j] = (int) (radius * Math.sin(angle));
+            }
+
+            if (mRingStart.length <= ring) {
+                int length = mRingStart.length * 2;
+                mRingStart = copyOf(mRingStart, length);
+                mRingSize = copyOf(mRingSize, length);
+                mRingFirstAngle = copyOf(mRingFirstAngle, length);
+                mRingStep = copyOf(mRingStep, length);
+            }
+            mRingStart[ring] = placed;
+            mRingSize[ring] = n;
+            mRingFirstAngle[ring] = first;
+            mRingStep[ring] = step;
+
+            placed += n;
+            ring++;
+        }
+
+        mRingCount = ring;
+        mFullCircle = fullCircle;
+        mOffsetsSpacing = spacing;
+        mOffsetsCount = count;
+        mOffsetsRadius = mRadius;
+        mOffsetsItemSize = itemSize;
+        mOffsetsValid = true;
+    }
+
+    /**
+     * The number of items of the given size that fit on an arc without overlapping.
+     */
+    static int ringCapacity(int radius, double sweep, int itemSize, boolean fullCircle) {
+        if (itemSize <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        if (itemSize >= 2 * radius) {
+            return 1;
+        }
+        // The angle between two adjacent item centers whose chord is one item size.
+        double step = 2 * Math.asin(itemSize / (2d * radius));
+        int capacity = (int) (Math.abs(sweep) / step) + (fullCircle ? 0 : 1);
+        return Math.max(1, capacity);
+    }
+
+    private void layoutLine(int right, int top, int buttonWidth, int count) {
+        final int[] sizes = mSizes;
+        final int[] positions = mPositions;
+        int bottom;
+        for (int i = 0; i < count; i++) {
+            int s = i * SIZE_STRIDE;
+            int p = ITEMS + i * POSITION_STRIDE;
+            bottom = top -= mItemGap;
+
+            int width = sizes[s + ITEM_WIDTH];
+            int height = sizes[s + ITEM_HEIGHT];
+            top -= height;
+            int d = (buttonWidth - width) / 2;
+            int itemLeft = right - width - d;
+            positions[p + LEFT] = itemLeft;
+            positions[p + TOP] = top;
+            positions[p + RIGHT] = right - d;
+            positions[p + BOTTOM] = bottom;
+
+            int labelHeight = sizes[s + LABEL_HEIGHT];
+            d = (height - labelHeight) / 2;
+            positions[p + LABEL + LEFT] = itemLeft - sizes[s + LABEL_WIDTH] - LABEL_OFFSET;
+            positions[p + LABEL + TOP] = top + d;
+            positions[p + LABEL + RIGHT] = itemLeft;
+            positions[p + LABEL + BOTTOM] = top + d + labelHeight;
+        }
+    }
+
+    //-- Hit testing --//
+
+    /**
+     * Finds the item (or, in the line pattern, the label) at the given point of the laid out menu, without
+     * item translations.
+     *
+     * In the circle pattern the point is converted to polar coordinates around the menu button, which
+     * directly give the ring and the sector of the only item it can be in, so the cost does not depend
+     * on the number of items.
+     *
+     * @return The index of the item, or -1 if there is none.
+     */
+    int hitTest(float x, float y) {
+        if (mCount == 0) {
+            return -1;
+        }
+        return mIsCircle ? hitTestCircle(x, y) : hitTestLine(x, y);
+    }
+
+    private int hitTestCircle(float x, float y) {
+        if (!mOffsetsValid || mOffsetsSpacing <= 0) {
+            return -1;
+        }
+        final int[] positions = mPositions;
+        // Offsets are positive towards the left and up, the same orientation is used here.
+        double dx = (positions[BUTTON + LEFT] + positions[BUTTON + RIGHT]) / 2d - x;
+        double dy = (positions[BUTTON + TOP] + positions[BUTTON + BOTTOM]) / 2d - y;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double angle = Math.atan2(dy, dx);
+        int ring = (int) Math.round((distance - mOffsetsRadius) / mOffsetsSpacing);
+
+        // The corners of an item can reach into the neighbouring ring or sector, so the nearest sector of
+        // the nearest ring is tested first and then its neighbours: at most nine items, whatever the count.
+        int index = hitTestRing(ring, angle, x, y);
+        if (index < 0) {
+            index = hitTestRing(ring - 1, angle, x, y);
+        }
+        if (index < 0) {
+            index = hitTestRing(ring + 1, angle, x, y);
+        }
+        return index;
+    }
+
+    private int hitTestRing(int ring, double angle, float x, float y) {
+        if (ring < 0 || ring >= mRingCount) {
+            return -1;
+        }
+        final int n = mRingSize[ring];
+        final int start = mRingStart[ring];
+        if (n == 1) {
+            return contains(itemOffset(start), x, y) ? start : -1;
+        }
+        final double step = mRingStep[ring];
+        final double relative = angle - mRingFirstAngle[ring];
+        int sector;
+        if (mFullCircle) {
+            sector = (int) Math.round(normalizeAngle(relative) / step);
+        } else {
+            // Measure the angle from the middle of the arc so it is not split by the +-PI wrap.
+            double middle = step * (n - 1) / 2;
+            sector = (int) Math.round((normalizeAngle(relative - middle) + middle) / step);
+        }
+        for (int d = 0; d < 3; d++) {
+            int candidate = sector + (d == 0 ? 0 : d == 1 ? -1 : 1);
+            if (mFullCircle) {
+                candidate = ((candidate % n) + n) % n;
+            } else if (candidate < 0 || candidate >= n) {
+                continue;
+            }
+            if (contains(itemOffset(start + candidate), x, y)) {
+                return start + candidate;
+            }
+        }
+        return -1;
+    }
+
+    private int hitTestLine(float x, float y) {
+        for (int i = 0; i < mCount; i++) {
+            int p = itemOffset(i);
+            if (contains(p, x, y) || contains(p + LABEL, x, y)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int offset, float x, float y) {
+        final int[] positions = mPositions;
+        return x >= positions[offset + LEFT] && x < positions[offset + RIGHT]
+                && y >= positions[offset + TOP] && y < positions[offset + BOTTOM];
+    }
+
+    /**
+     * Brings an angle into [-PI, PI).
+     */
+    private static double normalizeAngle(double angle) {
+        angle %= 2 * Math.PI;
+        if (angle < -Math.PI) {
+            angle += 2 * Math.PI;
+        } else if (angle >= Math.PI) {
+            angle -= 2 * Math.PI;
+        }
+        return angle;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    //-- Measure --//
+
+    /**
+     * Computes the exact bounds of the open menu (menu button, items and, in the line pattern, labels) from
+     * the size buffer, so the menu can wrap its content. The geometry does not depend on the anchor, so
+     * this lays the menu out again at the anchor of the last layout, the positions stay valid for it.
+     */
+    void measure(int buttonWidth, int buttonHeight, int count) {
+        final int anchorRight = mRight;
+        final int anchorBottom = mBottom;
+        layout(anchorRight, anchorBottom, buttonWidth, buttonHeight, count);
+        final int[] positions = mPositions;
+        int left = positions[BUTTON + LEFT];
+        int top = positions[BUTTON + TOP];
+        int right = anchorRight;
+        int bottom = anchorBottom;
+        for (int i = 0; i < count; i++) {
+            int p = itemOffset(i);
+            left = Math.min(left, positions[p + LEFT]);
+            top = Math.min(top, positions[p + TOP]);
+            right = Math.max(right, positions[p + RIGHT]);
+            bottom = Math.max(bottom, positions[p + BOTTOM]);
+            if (!mIsCircle) {
+                left = Math.min(left, positions[p + LABEL + LEFT]);
+                top = Math.min(top, positions[p + LABEL + TOP]);
+                bottom = Math.max(bottom, positions[p + LABEL + BOTTOM]);
+            }
+        }
+        mMeasuredWidth = right - left;
+        mMeasuredHeight = bottom - top;
+        mOverhangRight = right - anchorRight;
+        mOverhangBottom = bottom - anchorBottom;
+    }
+
+    int getMeasuredWidth() {
+        return mMeasuredWidth;
+    }
+
+    int getMeasuredHeight() {
+        return mMeasuredHeight;
+    }
+
+    /**
+     * How far the open menu reaches right of the menu button, the button is laid out that far from the edge.
+     */
+    int getOverhangRight() {
+        return mOverhangRight;
+    }
+
+    /**
+     * How far the open menu reaches below the menu button, the button is laid out that far from the edge.
+     */
+    int getOverhangBottom() {
+        return mOverhangBottom;
+    }
+
+    //-- Accessors --//
+
+    /**
+     * The buffer written by {@link #layout}. Only valid until the next call to {@link #ensureCapacity}.
+     */
+    int[] getPositions() {
+        return mPositions;
+    }
+
+    /**
+     * Offset of the given item's rect in the position buffer.
+     */
+    static int itemOffset(int index) {
+        return ITEMS + index * POSITION_STRIDE;
+    }
+
+    /**
+     * Horizontal translation that moves the item onto the menu button, i.e. its closed position.
+     */
+    int closedTranslationX(int index) {
+        return mPositions[BUTTON + LEFT] - mPositions[itemOffset(index) + LEFT];
+    }
+
+    /**
+     * Vertical translation that moves the item onto the menu button, i.e. its closed position.
+     */
+    int closedTranslationY(int index) {
+        return mPositions[BUTTON + TOP] - mPositions[itemOffset(index) + TOP];
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    boolean isCircle() {
+        return mIsCircle;
+    }
+
+    int getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * The number of rings used by the last circle layout.
+     */
+    int getRingCount() {
+        return mRingCount;
+    }
+
+    //-- Mutators --//
+
+    void setIsCircle(boolean isCircle) {
+        mIsCircle = isCircle;
+    }
+
+    void setRadius(int radius) {
+        mRadius = radius;
+    }
+
+    void setMultipleOfFB(float multipleOfFB) {
+        mMultipleOfFB = multipleOfFB;
+    }
+
+    void setItemGap(int itemGap) {
+        mItemGap = itemGap;
+        mOffsetsValid = false;
+    }
+
+    void setArc(float startAngle, float sweepAngle) {
+        mStartAngle = startAngle;
+        mSweepAngle = sweepAngle;
+        mOffsetsValid = false;
+    }
+
+    void setRingSpacing(int ringSpacing) {
+        mRingSpacing = ringSpacing;
+        mOffsetsValid = false;
+    }
+}
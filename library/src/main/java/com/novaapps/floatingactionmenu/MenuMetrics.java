@@ -0,0 +1,94 @@
+package com.novaapps.floatingactionmenu;
+
+/**
+ * Tracks the timing of the open/close transitions and of the measure/layout passes of a menu, and reports
+ * them to its OnMenuMetricsListener. Only exists while a listener is installed, so the menu pays nothing
+ * for metrics otherwise.
+ */
+final class MenuMetrics {
+
+    private final FloatingActionMenu.OnMenuMetricsListener mListener;
+
+    /**
+     * The expected time between two frames, a longer gap counts the missing frames as dropped.
+     */
+    private final long mFrameIntervalNanos;
+
+    private int mMeasureCount;
+    private int mLayoutCount;
+
+    /**
+     * A flag representing whether or not a transition is being tracked.
+     */
+    private boolean mActive;
+    private boolean mOpening;
+    private long mRequestTime;
+    private long mLastFrameTime;
+    private int mFrameCount;
+    private int mDroppedFrames;
+
+    MenuMetrics(FloatingActionMenu.OnMenuMetricsListener listener, long frameIntervalNanos) {
+        mListener = listener;
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * Starts tracking a transition, reporting the one it interrupts if any.
+     */
+    void onTransitionRequested(boolean opening, long now) {
+        if (mActive) {
+            end(now, false);
+        }
+        mActive = true;
+        mOpening = opening;
+        mRequestTime = now;
+        mLastFrameTime = 0;
+        mFrameCount = 0;
+        mDroppedFrames = 0;
+    }
+
+    void onFrame(long now) {
+        if (!mActive) {
+            return;
+        }
+        if (mFrameCount == 0) {
+            mListener.onTransitionFirstFrame(mOpening, now - mRequestTime);
+        } else {
+            long frameTime = now - mLastFrameTime;
+            mListener.onTransitionFrame(mOpening, frameTime);
+            if (mFrameIntervalNanos > 0 && frameTime > mFrameIntervalNanos * 3 / 2) {
+                mDroppedFrames += (int) ((frameTime + mFrameIntervalNanos / 2) / mFrameIntervalNanos) - 1;
+            }
+        }
+        mFrameCount++;
+        mLastFrameTime = now;
+    }
+
+    void onTransitionFinished(long now) {
+        if (mActive) {
+            end(now, true);
+        }
+    }
+
+    /**
+     * Reports the tracked transition, if any, as not completed, e.g. when the menu is reset.
+     */
+    void onTransitionAborted(long now) {
+        if (mActive) {
+            end(now, false);
+        }
+    }
+
+    private void end(long now, boolean completed) {
+        mActive = false;
+        mListener.onTransitionEnd(mOpening, now - mRequestTime, mFrameCount, mDroppedFrames, completed);
+    }
+
+    void onMeasurePass(long durationNanos) {
+        mListener.onMeasurePass(++mMeasureCount, durationNanos);
+    }
+
+    void onLayoutPass(long durationNanos) {
+        mListener.onLayoutPass(++mLayoutCount, durationNanos);
+    }
+}
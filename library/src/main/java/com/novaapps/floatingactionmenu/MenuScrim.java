@@ -0,0 +1,139 @@
+package com.novaapps.floatingactionmenu;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.View;
+
+/**
+ * Draws the dim layer behind the menu items.
+ *
+ * The scrim is drawn by the menu itself in dispatchDraw instead of being the view background, and its
+ * fade is driven by a primitive progress. When the menu wraps its content, the {@link MenuScrimLayer}
+ * of its window draws the same scrim over the rest of the window. A frame only invalidates (the bounds
+ * of) the scrim when the alpha it draws actually changes, and it never allocates.
+ */
+final class MenuScrim {
+
+    /**
+     * Paint used to draw the scrim, its alpha is updated in place.
+     */
+    private final Paint mPaint = new Paint();
+
+    /**
+     * The area to dim when custom bounds are set.
+     */
+    private final Rect mBounds = new Rect();
+
+    /**
+     * A flag representing whether or not the scrim is restricted to mBounds (true) or covers the whole view.
+     */
+    private boolean mHasBounds;
+
+    /**
+     * The alpha of the scrim color when the menu is fully open.
+     */
+    private int mMaxAlpha;
+
+    /**
+     * The alpha the scrim currently draws with, 0 when hidden.
+     */
+    private int mAlpha;
+
+    //-- Mutators --//
+
+    /**
+     * Sets the color of the scrim when the menu is fully open.
+     */
+    void setColor(int color) {
+        mPaint.setColor(color);
+        mMaxAlpha = Color.alpha(color);
+        mPaint.setAlpha(mAlpha);
+    }
+
+    /**
+     * Restricts the scrim to the given bounds, or lets it cover the whole view when null.
+     */
+    void setBounds(Rect bounds) {
+        mHasBounds = bounds != null;
+        if (mHasBounds) {
+            mBounds.set(bounds);
+        }
+    }
+
+    /**
+     * Sets the progress of the fade.
+     *
+     * @param progress From 0 (hidden) to 1 (fully shown).
+     * @return True if the drawn alpha changed and the scrim needs to be redrawn.
+     */
+    boolean setProgress(float progress) {
+        int alpha = (int) (mMaxAlpha * (progress < 0f ? 0f : progress > 1f ? 1f : progress));
+        if (alpha == mAlpha) {
+            return false;
+        }
+        mAlpha = alpha;
+        mPaint.setAlpha(alpha);
+        return true;
+    }
+
+    //-- Drawing --//
+
+    /**
+     * Invalidates the part of the host covered by the scrim.
+     */
+    void invalidate(View host) {
+        if (mHasBounds) {
+            host.invalidate(mBounds.left, mBounds.top, mBounds.right, mBounds.bottom);
+        } else {
+            host.invalidate();
+        }
+    }
+
+    /**
+     * Adds the part of the host covered by the scrim to the given rect.
+     */
+    void unionBounds(Rect rect, int width, int height) {
+        if (mHasBounds) {
+            rect.union(mBounds);
+        } else {
+            rect.union(0, 0, width, height);
+        }
+    }
+
+    void draw(Canvas canvas, int width, int height) {
+        if (mAlpha == 0) {
+            return;
+        }
+        if (mHasBounds) {
+            canvas.drawRect(mBounds, mPaint);
+        } else {
+            canvas.drawRect(0, 0, width, height, mPaint);
+        }
+    }
+
+    /**
+     * Draws the scrim around a hole, where the menu draws it itself below its items.
+     */
+    void drawAround(Canvas canvas, int width, int height, Rect hole) {
+        if (mAlpha == 0) {
+            return;
+        }
+        canvas.drawRect(0, 0, width, hole.top, mPaint);
+        canvas.drawRect(0, hole.top, hole.left, hole.bottom, mPaint);
+        canvas.drawRect(hole.right, hole.top, width, hole.bottom, mPaint);
+        canvas.drawRect(0, hole.bottom, width, height, mPaint);
+    }
+
+    boolean hasBounds() {
+        return mHasBounds;
+    }
+
+    /**
+     * The alpha the scrim currently draws with, 0 when hidden.
+     */
+    int getAlpha() {
+        return mAlpha;
+    }
+}
@@ -0,0 +1,224 @@
+package com.novaapps.floatingactionmenu;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+
+/**
+ * The overlay shared by all menus of a window.
+ *
+ * There is one layer per window, remembered as a tag of its root view, and every attached menu registers
+ * with it. It keeps a single menu of the window open: a menu that opens closes the others. While the open
+ * menu does not cover the window (e.g. it wraps its content), the layer is added on top of the root view,
+ * if it is a FrameLayout, and draws the scrim of that menu once over the rest of the window, around a
+ * hole over the menu, where the menu draws the scrim itself below its items. Touches in the hole fall
+ * through to the menu, touches outside of it close the open menu, when it is set to close on touch
+ * outside, through a single GestureDetector.
+ */
+@SuppressLint("ViewConstructor")
+final class MenuScrimLayer extends View {
+
+    /**
+     * The root view of the window, the layer is added on top of its children when needed.
+     */
+    private final ViewGroup mRoot;
+
+    /**
+     * The menus attached to the window.
+     */
+    private final ArrayList<FloatingActionMenu> mMenus = new ArrayList<>(2);
+
+    /**
+     * The menu closed by the gesture in progress, null if the gesture is not handled.
+     */
+    private FloatingActionMenu mTouchTarget;
+
+    /**
+     * Looks for taps outside of the open menu. Created on the first touch, see {@link #getGestureDetector()}.
+     */
+    private GestureDetector mGestureDetector;
+
+    /**
+     * The bounds of a menu, in the coordinates of this layer.
+     */
+    private final Rect mHole = new Rect();
+
+    /**
+     * Scratch locations in the window, reused by every frame.
+     */
+    private final int[] mMenuLocation = new int[2];
+    private final int[] mLocation = new int[2];
+
+    /**
+     * Removes the layer from the window once the last menu is gone, unless another one registered since.
+     */
+    private final Runnable mRemoveIfUnused = new Runnable() {
+        @Override
+        public void run() {
+            if (mMenus.isEmpty()) {
+                mRoot.setTag(R.id.fam_scrim_layer, null);
+                if (getParent() != null) {
+                    mRoot.removeView(MenuScrimLayer.this);
+                }
+            }
+        }
+    };
+
+    private MenuScrimLayer(Context context, ViewGroup root) {
+        super(context);
+        mRoot = root;
+        setWillNotDraw(false);
+    }
+
+    //-- Registration --//
+
+    /**
+     * Registers a menu, which was just attached, with the layer of its window.
+     * @return The layer, or null if the menu is the root of its window.
+     */
+    static MenuScrimLayer register(FloatingActionMenu menu) {
+        View root = menu.getRootView();
+        if (root == menu || !(root instanceof ViewGroup)) {
+            return null;
+        }
+        MenuScrimLayer layer = (MenuScrimLayer) root.getTag(R.id.fam_scrim_layer);
+        if (layer == null) {
+            layer = new MenuScrimLayer(menu.getContext(), (ViewGroup) root);
+            root.setTag(R.id.fam_scrim_layer, layer);
+        }
+        layer.mMenus.add(menu);
+        return layer;
+    }
+
+    /**
+     * Unregisters a menu that is being detached.
+     */
+    void unregister(FloatingActionMenu menu) {
+        mMenus.remove(menu);
+        if (mTouchTarget == menu) {
+            mTouchTarget = null;
+        }
+        if (mMenus.isEmpty()) {
+            // Not removed right away, the whole window may be detaching its views.
+            mRoot.post(mRemoveIfUnused);
+        } else {
+            invalidate();
+        }
+    }
+
+    //-- Coordination --//
+
+    /**
+     * Closes the other open menus of the window, called when the given menu opens.
+     */
+    void onMenuOpening(FloatingActionMenu menu) {
+        for (int i = 0; i < mMenus.size(); i++) {
+            FloatingActionMenu other = mMenus.get(i);
+            if (other != menu && other.isOpened()) {
+                other.close();
+            }
+        }
+    }
+
+    /**
+     * Redraws the scrim of the window after the scrim of the given menu changed, adding the layer to the
+     * window the first time a menu needs it.
+     */
+    void onScrimChanged(FloatingActionMenu menu) {
+        if (getParent() == null) {
+            // Only a FrameLayout root, like the DecorView, stacks the layer over its content as is. Under
+            // other roots each menu only dims its own bounds.
+            if (!(mRoot instanceof FrameLayout) || menu.getWindowScrim() == null) {
+                return;
+            }
+            mRoot.addView(this, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT,
+                    FrameLayout.LayoutParams.MATCH_PARENT));
+        }
+        invalidate();
+    }
+
+    //-- Drawing and touch --//
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Only the most opaque scrim is drawn, a menu closing while another opens fades within itself.
+        FloatingActionMenu top = null;
+        MenuScrim topScrim = null;
+        for (int i = 0; i < mMenus.size(); i++) {
+            FloatingActionMenu menu = mMenus.get(i);
+            MenuScrim scrim = menu.getWindowScrim();
+            if (scrim != null && (topScrim == null || scrim.getAlpha() > topScrim.getAlpha())) {
+                top = menu;
+                topScrim = scrim;
+            }
+        }
+        if (top != null) {
+            updateHole(top);
+            topScrim.drawAround(canvas, getWidth(), getHeight(), mHole);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mTouchTarget = null;
+            FloatingActionMenu open = getOpenMenu();
+            if (open == null || !open.isClosedOnTouchOutside()) {
+                return false;
+            }
+            updateHole(open);
+            if (mHole.contains((int) event.getX(), (int) event.getY())) {
+                return false;
+            }
+            mTouchTarget = open;
+        }
+        return mTouchTarget != null && getGestureDetector().onTouchEvent(event);
+    }
+
+    private FloatingActionMenu getOpenMenu() {
+        for (int i = 0; i < mMenus.size(); i++) {
+            if (mMenus.get(i).isOpened()) {
+                return mMenus.get(i);
+            }
+        }
+        return null;
+    }
+
+    private GestureDetector getGestureDetector() {
+        if (mGestureDetector == null) {
+            mGestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+
+                @Override
+                public boolean onDown(MotionEvent e) {
+                    return true;
+                }
+
+                @Override
+                public boolean onSingleTapUp(MotionEvent e) {
+                    if (mTouchTarget != null) {
+                        mTouchTarget.close();
+                    }
+                    return true;
+                }
+            });
+        }
+        return mGestureDetector;
+    }
+
+    private void updateHole(FloatingActionMenu menu) {
+        menu.getLocationInWindow(mMenuLocation);
+        getLocationInWindow(mLocation);
+        int left = mMenuLocation[0] - mLocation[0];
+        int top = mMenuLocation[1] - mLocation[1];
+        mHole.set(left, top, left + menu.getWidth(), top + menu.getHeight());
+    }
+}
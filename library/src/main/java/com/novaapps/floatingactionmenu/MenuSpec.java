@@ -0,0 +1,182 @@
+package com.novaapps.floatingactionmenu;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.WorkerThread;
+import android.support.design.widget.FloatingActionButton;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * A declarative description of the items and layout of a FloatingActionMenu, which can be prepared away from
+ * the UI thread.
+ *
+ * {@link #prepare(Context)} creates the item buttons and their labels, resolves the icons (through the
+ * shared drawable cache of the menus) and measures the label text, all detached from any window, the way
+ * AsyncLayoutInflater inflates views on a background thread. The UI thread then attaches the result to a
+ * menu in a single layout pass with {@link FloatingActionMenu#setPreparedMenu(PreparedMenu)}. The menu
+ * button itself still comes from the layout of the menu.
+ */
+public class MenuSpec {
+
+    /**
+     * Icons and labels of the items, in order.
+     */
+    private final ArrayList<Integer> mIcons = new ArrayList<>(5);
+    private final ArrayList<CharSequence> mLabels = new ArrayList<>(5);
+
+    /**
+     * The layout inflated for every item button, 0 to create plain FloatingActionButtons.
+     */
+    private int mItemLayout;
+
+    private boolean mIsCircle;
+
+    /**
+     * Geometry of the menu, negative (or 0 for the multiple) to keep the defaults of the menu.
+     */
+    private int mRadius = -1;
+    private float mMultipleOfFB;
+    private int mItemGap = -1;
+
+    //-- Mutators --//
+
+    /**
+     * Adds an item with the given icon and label, the label is also the content description of the item.
+     */
+    public void addItem(@DrawableRes int icon, CharSequence label) {
+        mIcons.add(icon);
+        mLabels.add(label);
+    }
+
+    /**
+     * Sets the layout of the item buttons, whose root must be a FloatingActionButton, e.g. to set their
+     * size and tint. By default plain FloatingActionButtons are created.
+     */
+    public void setItemLayout(@LayoutRes int itemLayout) {
+        mItemLayout = itemLayout;
+    }
+
+    /**
+     * Set as circle or line (default) pattern, see {@link FloatingActionMenu#setIsCircle(boolean)}.
+     */
+    public void setIsCircle(boolean isCircle) {
+        mIsCircle = isCircle;
+    }
+
+    /**
+     * See {@link FloatingActionMenu#setmRadius(int)}.
+     */
+    public void setRadius(int radius) {
+        mRadius = radius;
+    }
+
+    /**
+     * See {@link FloatingActionMenu#setMultipleOfFB(float)}.
+     */
+    public void setMultipleOfFB(float multipleOfFB) {
+        mMultipleOfFB = multipleOfFB;
+    }
+
+    /**
+     * See {@link FloatingActionMenu#setmItemGap(int)}.
+     */
+    public void setItemGap(int itemGap) {
+        mItemGap = itemGap;
+    }
+
+    //-- Preparation --//
+
+    /**
+     * Creates the items of the menu described by this spec, their icons and measured labels. Can be called
+     * on any thread; the spec must not be modified meanwhile.
+     *
+     * @param context The themed context of the menu, e.g. its Activity.
+     */
+    @WorkerThread
+    public PreparedMenu prepare(Context context) {
+        final LayoutInflater inflater = LayoutInflater.from(context);
+        final int unspecified = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        final int count = mIcons.size();
+        ArrayList<FloatingActionButton> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            FloatingActionButton item = mItemLayout != 0
+                    ? (FloatingActionButton) inflater.inflate(mItemLayout, null, false)
+                    : new FloatingActionButton(context);
+            item.setImageDrawable(MenuDrawablePool.get(context, mIcons.get(i)));
+            CharSequence text = mLabels.get(i);
+            item.setContentDescription(text);
+            item.measure(unspecified, unspecified);
+
+            // Measures and lays out the label text, the menu reuses it as long as the text does not change.
+            MenuLabel label = FloatingActionMenu.newLabel(context, text);
+            label.measure(unspecified, unspecified);
+            // The menu adopts the label remembered as the tag of the item.
+            item.setTag(label);
+            items.add(item);
+        }
+        return new PreparedMenu(this, items);
+    }
+
+    /**
+     * Prepares the menu on a background thread, then hands the result to the listener on the UI thread.
+     *
+     * @param context The themed context of the menu, e.g. its Activity.
+     */
+    public void prepareAsync(final Context context, final FloatingActionMenu.OnMenuPreparedListener listener) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final PreparedMenu menu = prepare(context);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onMenuPrepared(menu);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * The items of a MenuSpec, created and measured, ready to be attached to a menu once.
+     */
+    public static final class PreparedMenu {
+
+        final ArrayList<FloatingActionButton> mItems;
+        final boolean mIsCircle;
+        final int mRadius;
+        final float mMultipleOfFB;
+        final int mItemGap;
+
+        /**
+         * A flag representing whether or not the items were attached to a menu already.
+         */
+        private boolean mAttached;
+
+        PreparedMenu(MenuSpec spec, ArrayList<FloatingActionButton> items) {
+            mItems = items;
+            mIsCircle = spec.mIsCircle;
+            mRadius = spec.mRadius;
+            mMultipleOfFB = spec.mMultipleOfFB;
+            mItemGap = spec.mItemGap;
+        }
+
+        /**
+         * Marks the items as attached, they can only belong to one menu.
+         */
+        void attach() {
+            if (mAttached) {
+                throw new IllegalStateException("A prepared menu can only be attached once");
+            }
+            mAttached = true;
+        }
+    }
+}
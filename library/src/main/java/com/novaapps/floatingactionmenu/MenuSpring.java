@@ -0,0 +1,107 @@
+package com.novaapps.floatingactionmenu;
+
+/**
+ * A damped spring moving the open progress of the menu (0 closed, 1 open) towards a target.
+ *
+ * Changing the target of a moving spring keeps its current position and velocity, so a toggle during an
+ * animation bends the running motion instead of restarting it. The spring is integrated with fixed
+ * sub-steps, stepping it allocates nothing.
+ */
+final class MenuSpring {
+
+    /**
+     * Default stiffness, settles in about the duration of the default tween animation.
+     */
+    static final float DEFAULT_STIFFNESS = 400f;
+
+    /**
+     * Default damping ratio, a slight overshoot like the default open interpolator.
+     */
+    static final float DEFAULT_DAMPING_RATIO = 0.7f;
+
+    /**
+     * Largest integration step, in seconds, keeps the integration stable for stiff springs.
+     */
+    private static final float MAX_STEP = 0.004f;
+
+    /**
+     * The spring is at rest when closer to its target than this, and slower than REST_VELOCITY.
+     */
+    private static final float REST_DISTANCE = 0.001f;
+    private static final float REST_VELOCITY = 0.01f;
+
+    private float mStiffness;
+    private float mDamping;
+
+    private float mPosition;
+    private float mVelocity;
+    private float mTarget;
+
+    MenuSpring() {
+        setSpring(DEFAULT_STIFFNESS, DEFAULT_DAMPING_RATIO);
+    }
+
+    /**
+     * Sets the stiffness and damping ratio (1 is critically damped, lower values overshoot) of a unit mass.
+     */
+    void setSpring(float stiffness, float dampingRatio) {
+        mStiffness = stiffness;
+        mDamping = 2f * dampingRatio * (float) Math.sqrt(stiffness);
+    }
+
+    /**
+     * Moves the spring to a position, at rest.
+     */
+    void reset(float position) {
+        mPosition = position;
+        mTarget = position;
+        mVelocity = 0f;
+    }
+
+    /**
+     * Sets the position the spring moves to, keeping its current position and velocity.
+     */
+    void setTarget(float target) {
+        mTarget = target;
+    }
+
+    /**
+     * Sets the velocity of the spring, in progress per second, e.g. to hand over a fling.
+     */
+    void setVelocity(float velocity) {
+        mVelocity = velocity;
+    }
+
+    /**
+     * Advances the spring.
+     *
+     * @param seconds The time elapsed since the last step.
+     * @return True if the spring came to rest on its target.
+     */
+    boolean step(float seconds) {
+        while (seconds > 0f) {
+            float h = seconds < MAX_STEP ? seconds : MAX_STEP;
+            float acceleration = -mStiffness * (mPosition - mTarget) - mDamping * mVelocity;
+            mVelocity += acceleration * h;
+            mPosition += mVelocity * h;
+            seconds -= h;
+        }
+        if (Math.abs(mPosition - mTarget) < REST_DISTANCE && Math.abs(mVelocity) < REST_VELOCITY) {
+            reset(mTarget);
+            return true;
+        }
+        return false;
+    }
+
+    float getPosition() {
+        return mPosition;
+    }
+
+    float getVelocity() {
+        return mVelocity;
+    }
+
+    float getTarget() {
+        return mTarget;
+    }
+}
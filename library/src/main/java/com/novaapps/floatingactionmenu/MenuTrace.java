@@ -0,0 +1,53 @@
+package com.novaapps.floatingactionmenu;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits android.os.Trace sections for systrace/Perfetto captures of the menu.
+ *
+ * Call sites check {@link #isEnabled()} once and only then begin/end their sections, with constant section
+ * names. Tracing is off until enabled at runtime. The TRACING build config field is fixed when the library
+ * itself is built, so apps using the published library only have the runtime switch.
+ */
+final class MenuTrace {
+
+    /**
+     * Build switch of the library, set through its TRACING build config field.
+     */
+    static final boolean COMPILED = BuildConfig.TRACING;
+
+    static final String MEASURE = "FAM#onMeasure";
+    static final String LAYOUT = "FAM#onLayout";
+    static final String START_OPEN = "FAM#startOpen";
+    static final String START_CLOSE = "FAM#startClose";
+    static final String FRAME = "FAM#frame";
+
+    /**
+     * Runtime switch.
+     */
+    private static boolean sEnabled;
+
+    private MenuTrace() {
+    }
+
+    static boolean isEnabled() {
+        return COMPILED && sEnabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        // Trace sections need API 18.
+        sEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static void end() {
+        Trace.endSection();
+    }
+}
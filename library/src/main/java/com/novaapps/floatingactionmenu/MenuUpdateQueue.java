@@ -0,0 +1,79 @@
+package com.novaapps.floatingactionmenu;
+
+/**
+ * A queue of pending changes to the menu items, recorded as primitive (operation, first, second)
+ * triples so notifications can be batched and applied together in the next measure pass.
+ */
+final class MenuUpdateQueue {
+
+    /**
+     * Items were inserted: first is the position, second the count.
+     */
+    static final int INSERT = 0;
+
+    /**
+     * Items were removed: first is the position, second the count.
+     */
+    static final int REMOVE = 1;
+
+    /**
+     * An item was moved: first is the old position, second the new one.
+     */
+    static final int MOVE = 2;
+
+    /**
+     * Items changed and need to be bound again: first is the position, second the count.
+     */
+    static final int CHANGE = 3;
+
+    /**
+     * Everything may have changed, earlier operations are dropped.
+     */
+    static final int RESET = 4;
+
+    private static final int STRIDE = 3;
+
+    private int[] mOps = new int[STRIDE * 8];
+
+    private int mSize;
+
+    /**
+     * Records an operation.
+     * @return True if this is the first operation of the batch.
+     */
+    boolean add(int op, int first, int second) {
+        if (op == RESET) {
+            mSize = 0;
+        }
+        if (mOps.length < (mSize + 1) * STRIDE) {
+            int[] ops = new int[mOps.length * 2];
+            System.arraycopy(mOps, 0, ops, 0, mSize * STRIDE);
+            mOps = ops;
+        }
+        int o = mSize * STRIDE;
+        mOps[o] = op;
+        mOps[o + 1] = first;
+        mOps[o + 2] = second;
+        return ++mSize == 1;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int op(int index) {
+        return mOps[index * STRIDE];
+    }
+
+    int first(int index) {
+        return mOps[index * STRIDE + 1];
+    }
+
+    int second(int index) {
+        return mOps[index * STRIDE + 2];
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+}
@@ -0,0 +1,177 @@
+package com.novaapps.floatingactionmenu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MenuLayoutEngineTest {
+
+    private static final int RIGHT = 1000;
+    private static final int BOTTOM = 2000;
+    private static final int BUTTON = 80;
+    private static final int ITEM = 56;
+    private static final int LABEL_WIDTH = 120;
+    private static final int LABEL_HEIGHT = 30;
+
+    private static MenuLayoutEngine newEngine(boolean circle, int count, boolean labels) {
+        MenuLayoutEngine engine = new MenuLayoutEngine();
+        engine.setIsCircle(circle);
+        engine.setItemGap(10);
+        int[] sizes = engine.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            int s = i * MenuLayoutEngine.SIZE_STRIDE;
+            sizes[s + MenuLayoutEngine.ITEM_WIDTH] = ITEM;
+            sizes[s + MenuLayoutEngine.ITEM_HEIGHT] = ITEM;
+            sizes[s + MenuLayoutEngine.LABEL_WIDTH] = labels ? LABEL_WIDTH : 0;
+            sizes[s + MenuLayoutEngine.LABEL_HEIGHT] = labels ? LABEL_HEIGHT : 0;
+        }
+        return engine;
+    }
+
+    private static int get(MenuLayoutEngine engine, int offset, int edge) {
+        return engine.getPositions()[offset + edge];
+    }
+
+    //-- Layout --//
+
+    @Test
+    public void lineStacksItemsAboveTheButton() {
+        MenuLayoutEngine engine = newEngine(false, 3, true);
+        engine.layout(RIGHT, BOTTOM, BUTTON, BUTTON, 3);
+
+        assertEquals(RIGHT - BUTTON, get(engine, MenuLayoutEngine.BUTTON, MenuLayoutEngine.LEFT));
+        assertEquals(BOTTOM - BUTTON, get(engine, MenuLayoutEngine.BUTTON, MenuLayoutEngine.TOP));
+        int previousTop = BOTTOM - BUTTON;
+        for (int i = 0; i < 3; i++) {
+            int p = MenuLayoutEngine.itemOffset(i);
+            // Centered on the button, one gap above the previous item.
+            assertEquals(previousTop - 10, get(engine, p, MenuLayoutEngine.BOTTOM));
+            assertEquals(RIGHT - (BUTTON - ITEM) / 2, get(engine, p, MenuLayoutEngine.RIGHT));
+            assertEquals(ITEM, get(engine, p, MenuLayoutEngine.RIGHT) - get(engine, p, MenuLayoutEngine.LEFT));
+            previousTop = get(engine, p, MenuLayoutEngine.TOP);
+
+            // The label ends left of the item, vertically centered on it.
+            int label = p + MenuLayoutEngine.LABEL;
+            assertEquals(get(engine, p, MenuLayoutEngine.LEFT), get(engine, label, MenuLayoutEngine.RIGHT));
+            assertEquals(LABEL_WIDTH + MenuLayoutEngine.LABEL_OFFSET,
+                    get(engine, label, MenuLayoutEngine.RIGHT) - get(engine, label, MenuLayoutEngine.LEFT));
+            assertEquals(get(engine, p, MenuLayoutEngine.TOP) + (ITEM - LABEL_HEIGHT) / 2,
+                    get(engine, label, MenuLayoutEngine.TOP));
+        }
+    }
+
+    @Test
+    public void circlePlacesItemsAtTheRadius() {
+        MenuLayoutEngine engine = newEngine(true, 4, false);
+        engine.setRadius(300);
+        engine.layout(RIGHT, BOTTOM, BUTTON, BUTTON, 4);
+
+        float centerX = RIGHT - BUTTON / 2f;
+        float centerY = BOTTOM - BUTTON / 2f;
+        assertEquals(1, engine.getRingCount());
+        for (int i = 0; i < 4; i++) {
+            int p = MenuLayoutEngine.itemOffset(i);
+            float x = (get(engine, p, MenuLayoutEngine.LEFT) + get(engine, p, MenuLayoutEngine.RIGHT)) / 2f;
+            float y = (get(engine, p, MenuLayoutEngine.TOP) + get(engine, p, MenuLayoutEngine.BOTTOM)) / 2f;
+            double distance = Math.hypot(x - centerX, y - centerY);
+            assertEquals(300, distance, 2);
+            // The default arc goes from left of the button to above it.
+            assertTrue(x <= centerX + 1 && y <= centerY + 1);
+        }
+    }
+
+    @Test
+    public void circleOverflowsIntoRings() {
+        MenuLayoutEngine engine = newEngine(true, 12, false);
+        engine.setRadius(150);
+        engine.layout(RIGHT, BOTTOM, BUTTON, BUTTON, 12);
+
+        assertTrue(engine.getRingCount() > 1);
+    }
+
+    //-- Measure --//
+
+    @Test
+    public void lineMeasuresItemsAndLabels() {
+        MenuLayoutEngine engine = newEngine(false, 3, true);
+        engine.measure(BUTTON, BUTTON, 3);
+
+        int p = MenuLayoutEngine.itemOffset(2);
+        // From the left of the labels to the right of the button.
+        assertEquals(BUTTON - (BUTTON - ITEM) / 2 + LABEL_WIDTH + MenuLayoutEngine.LABEL_OFFSET,
+                engine.getMeasuredWidth());
+        assertEquals(BUTTON + 3 * (ITEM + 10), engine.getMeasuredHeight());
+        assertEquals(0, engine.getOverhangRight());
+        assertEquals(0, engine.getOverhangBottom());
+        assertEquals(-engine.getMeasuredHeight(), get(engine, p, MenuLayoutEngine.TOP));
+    }
+
+    @Test
+    public void fullCircleMeasuresItsOverhang() {
+        MenuLayoutEngine engine = newEngine(true, 6, false);
+        engine.setRadius(200);
+        engine.setArc(0f, 360f);
+        engine.measure(BUTTON, BUTTON, 6);
+
+        assertTrue(engine.getOverhangRight() > 0);
+        assertTrue(engine.getOverhangBottom() > 0);
+        // Items left and right of the button, at 0 and 180 degrees.
+        assertEquals(2 * 200 + ITEM, engine.getMeasuredWidth(), 2);
+    }
+
+    //-- Hit testing --//
+
+    @Test
+    public void lineHitTestMatchesBruteForce() {
+        MenuLayoutEngine engine = newEngine(false, 5, true);
+        engine.layout(RIGHT, BOTTOM, BUTTON, BUTTON, 5);
+        assertHitTestMatchesBruteForce(engine, 5, true);
+    }
+
+    @Test
+    public void circleHitTestMatchesBruteForce() {
+        float[][] arcs = {{0f, 90f}, {-45f, 180f}, {0f, 360f}, {90f, -90f}};
+        int[] counts = {1, 3, 8, 20};
+        for (float[] arc : arcs) {
+            for (int count : counts) {
+                MenuLayoutEngine engine = newEngine(true, count, false);
+                engine.setRadius(160);
+                engine.setArc(arc[0], arc[1]);
+                engine.layout(RIGHT, BOTTOM, BUTTON, BUTTON, count);
+                assertHitTestMatchesBruteForce(engine, count, false);
+            }
+        }
+    }
+
+    /**
+     * Checks that every point of a grid over the menu hits an item containing it, or no item if none does.
+     */
+    private static void assertHitTestMatchesBruteForce(MenuLayoutEngine engine, int count, boolean labels) {
+        for (int y = BOTTOM - 1200; y < BOTTOM + 400; y += 7) {
+            for (int x = RIGHT - 1200; x < RIGHT + 400; x += 7) {
+                int index = engine.hitTest(x, y);
+                boolean any = false;
+                for (int i = 0; i < count; i++) {
+                    any |= contains(engine, i, x, y, labels);
+                }
+                if (index < 0) {
+                    assertTrue("missed an item at " + x + "," + y, !any);
+                } else {
+                    assertTrue("hit item " + index + " outside of it at " + x + "," + y,
+                            contains(engine, index, x, y, labels));
+                }
+            }
+        }
+    }
+
+    private static boolean contains(MenuLayoutEngine engine, int index, int x, int y, boolean labels) {
+        int p = MenuLayoutEngine.itemOffset(index);
+        return contains(engine, p, x, y) || (labels && contains(engine, p + MenuLayoutEngine.LABEL, x, y));
+    }
+
+    private static boolean contains(MenuLayoutEngine engine, int offset, int x, int y) {
+        return x >= get(engine, offset, MenuLayoutEngine.LEFT) && x < get(engine, offset, MenuLayoutEngine.RIGHT)
+                && y >= get(engine, offset, MenuLayoutEngine.TOP) && y < get(engine, offset, MenuLayoutEngine.BOTTOM);
+    }
+}